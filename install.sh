@@ -1,7 +1,10 @@
 #!/usr/bin/env bash
 set -euo pipefail
 
-JAR_URL="https://github.com/reyx/xfa2acro-repair/releases/download/v1.0.1/xfa2acro-repair-1.0.1.jar"
+# Always the latest published release. The CDS step needs a jar that ships
+# global.agnos.pdf.CdsTraining (the first release after 1.0.1); older jars install fine and skip it.
+VERSION="1.0.1"
+JAR_URL="https://github.com/reyx/xfa2acro-repair/releases/download/v${VERSION}/xfa2acro-repair-${VERSION}.jar"
 
 APP_NAME="xfa2acro-repair"
 APP_DIR="/usr/local/lib/${APP_NAME}"
@@ -35,6 +38,16 @@ sudo mv "$TMP_JAR" "${APP_DIR}/app.jar"
 sudo chmod 0755 "${APP_DIR}"
 sudo chmod 0644 "${APP_DIR}/app.jar"
 
+echo "==> Building class-data-sharing archive (faster startup)…"
+# An AppCDS archive is only valid for the JVM and jar path that produced it, so train it here.
+if sudo "$(command -v java)" -XX:ArchiveClassesAtExit="${APP_DIR}/app.jsa" \
+     -cp "${APP_DIR}/app.jar" global.agnos.pdf.CdsTraining >/dev/null 2>&1; then
+  sudo chmod 0644 "${APP_DIR}/app.jsa"
+else
+  echo "   (skipped: this JVM or jar cannot create a CDS archive; startup will just be slower)"
+  sudo rm -f "${APP_DIR}/app.jsa"
+fi
+
 echo "==> Installing launcher to ${BIN_PATH}…"
 LAUNCHER="$(mktemp -t ${APP_NAME}.sh.XXXXXXXX)"
 cat > "$LAUNCHER" <<"EOF"
@@ -43,6 +56,14 @@ set -euo pipefail
 
 APP_DIR="/usr/local/lib/xfa2acro-repair"
 JAR="${APP_DIR}/app.jar"
+JSA="${APP_DIR}/app.jsa"
+
+# Map pre-parsed classes from the AppCDS archive when present; a stale archive
+# (e.g. after a JDK upgrade) is silently ignored by -Xshare:auto.
+JAVA_OPTS=()
+if [[ -f "$JSA" ]]; then
+  JAVA_OPTS+=(-Xshare:auto "-XX:SharedArchiveFile=${JSA}" -Xlog:cds=off -Xlog:cds+dynamic=off)
+fi
 
 usage() {
   cat <<USAGE
@@ -53,6 +74,7 @@ Usage:
 Notes:
   - If only <input.pdf> is provided, output defaults to <input>.safe.pdf
   - If ASPOSE_CLIENT_ID and ASPOSE_CLIENT_SECRET are set, the tool will use Aspose Cloud to convert XFA → AcroForm first, then repair locally.
+  - XFA2ACRO_TIMEOUT / XFA2ACRO_PHASE_TIMEOUTS bound processing time (e.g. 120s, load=30s,strip-xfa=10s).
 USAGE
 }
 
@@ -62,7 +84,7 @@ fi
 
 if [[ "$1" == "--list-fields" ]]; then
   if [[ $# -ne 2 ]]; then usage; exit 2; fi
-  exec java -jar "$JAR" --list-fields "$2"
+  exec java ${JAVA_OPTS[@]+"${JAVA_OPTS[@]}"} -jar "$JAR" --list-fields "$2"
 fi
 
 in="$1"
@@ -78,7 +100,7 @@ if [[ -z "${out}" ]]; then
   out="${base}.safe.pdf"
 fi
 
-exec java -jar "$JAR" "$in" "$out"
+exec java ${JAVA_OPTS[@]+"${JAVA_OPTS[@]}"} -jar "$JAR" "$in" "$out"
 EOF
 
 chmod +x "$LAUNCHER"
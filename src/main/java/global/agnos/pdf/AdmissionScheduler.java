@@ -0,0 +1,191 @@
+package global.agnos.pdf;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs jobs on a fixed worker pool, admitting each only while its estimated
+ * heap cost fits the remaining budget (see {@link JobCostEstimator}).
+ *
+ * Pending jobs are scanned in submission order and any that fit are started,
+ * so small documents keep flowing past a large one that is waiting for room.
+ * To stop that from starving the large job, once it has been passed over
+ * {@link #MAX_BYPASSES} times nothing behind it is admitted until it runs.
+ * A job larger than the whole budget is admitted only when nothing else is
+ * running.
+ *
+ * Configured from the environment:
+ * XFA2ACRO_WORKERS=8 (default: available processors)
+ * XFA2ACRO_HEAP_BUDGET=6g (default: 70% of -Xmx; k/m/g suffixes)
+ */
+public final class AdmissionScheduler implements AutoCloseable {
+
+  static final int MAX_BYPASSES = 64;
+
+  private static final class Job<T> {
+    final long cost;
+    final Callable<T> task;
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    int bypassed;
+
+    Job(long cost, Callable<T> task) {
+      this.cost = cost;
+      this.task = task;
+    }
+  }
+
+  private final int workers;
+  private final long budgetBytes;
+  private final int maxPending;
+  private final ExecutorService pool;
+  private final LinkedList<Job<?>> pending = new LinkedList<>();
+
+  private long reservedBytes;
+  private long peakReservedBytes;
+  private int running;
+  private boolean closed;
+
+  public AdmissionScheduler(int workers, long budgetBytes) {
+    if (workers < 1 || budgetBytes < 1)
+      throw new IllegalArgumentException("workers and budget must be positive");
+    this.workers = workers;
+    this.budgetBytes = budgetBytes;
+    this.maxPending = workers * 4;
+    AtomicInteger n = new AtomicInteger();
+    this.pool = Executors.newFixedThreadPool(workers, r -> {
+      Thread t = new Thread(r, "xfa2acro-worker-" + n.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  public static AdmissionScheduler fromEnv() {
+    String w = System.getenv("XFA2ACRO_WORKERS");
+    String b = System.getenv("XFA2ACRO_HEAP_BUDGET");
+    int workers = (w == null || w.isBlank()) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(w.trim());
+    long budget = (b == null || b.isBlank()) ? (long) (Runtime.getRuntime().maxMemory() * 0.7) : parseBytes(b);
+    return new AdmissionScheduler(workers, budget);
+  }
+
+  /**
+   * Queue {@code task} with an estimated heap cost of {@code costBytes}. Blocks
+   * while the pending queue is full, so a caller walking a huge archive doesn't
+   * buffer the whole listing.
+   */
+  public synchronized <T> CompletableFuture<T> submit(long costBytes, Callable<T> task) throws InterruptedException {
+    while (pending.size() >= maxPending && !closed)
+      wait();
+    if (closed)
+      throw new IllegalStateException("Scheduler is closed");
+    Job<T> job = new Job<>(Math.max(1, costBytes), task);
+    pending.add(job);
+    dispatch();
+    return job.result;
+  }
+
+  private synchronized void dispatch() {
+    List<Job<?>> admitted = new ArrayList<>();
+    Job<?> oldestBlocked = null;
+    Iterator<Job<?>> it = pending.iterator();
+    while (it.hasNext() && running < workers) {
+      Job<?> job = it.next();
+      boolean fits = reservedBytes + job.cost <= budgetBytes
+          || (running == 0 && job.cost > budgetBytes);
+      if (fits) {
+        it.remove();
+        reservedBytes += job.cost;
+        peakReservedBytes = Math.max(peakReservedBytes, reservedBytes);
+        running++;
+        admitted.add(job);
+        if (oldestBlocked != null)
+          oldestBlocked.bypassed++;
+      } else if (job.bypassed >= MAX_BYPASSES) {
+        break; // starved: hold everything behind it until it fits
+      } else if (oldestBlocked == null) {
+        oldestBlocked = job;
+      }
+    }
+    for (Job<?> job : admitted)
+      pool.execute(() -> runJob(job));
+    if (!admitted.isEmpty())
+      notifyAll();
+  }
+
+  private <T> void runJob(Job<T> job) {
+    try {
+      job.result.complete(job.task.call());
+    } catch (Throwable t) {
+      job.result.completeExceptionally(t);
+    } finally {
+      synchronized (this) {
+        reservedBytes -= job.cost;
+        running--;
+        dispatch();
+        notifyAll();
+      }
+    }
+  }
+
+  public long budgetBytes() {
+    return budgetBytes;
+  }
+
+  public synchronized long reservedBytes() {
+    return reservedBytes;
+  }
+
+  /** Highest concurrent reservation seen; never above the budget unless a single oversized job ran. */
+  public synchronized long peakReservedBytes() {
+    return peakReservedBytes;
+  }
+
+  /** Wait for every submitted job to finish, then stop the workers. */
+  public void awaitTermination() throws InterruptedException {
+    synchronized (this) {
+      while (!pending.isEmpty() || running > 0)
+        wait();
+      closed = true;
+      notifyAll();
+    }
+    pool.shutdown();
+    pool.awaitTermination(1, TimeUnit.MINUTES);
+  }
+
+  /**
+   * {@link #awaitTermination()}; if interrupted while waiting, stops the
+   * workers without draining and leaves the interrupt flag set.
+   */
+  @Override
+  public void close() {
+    try {
+      awaitTermination();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      synchronized (this) {
+        closed = true;
+        notifyAll();
+      }
+      pool.shutdownNow();
+    }
+  }
+
+  static long parseBytes(String s) {
+    String v = s.trim().toLowerCase(Locale.ROOT);
+    long unit = 1;
+    char last = v.charAt(v.length() - 1);
+    if (last == 'k' || last == 'm' || last == 'g') {
+      unit = (last == 'k') ? 1L << 10 : (last == 'm') ? 1L << 20 : 1L << 30;
+      v = v.substring(0, v.length() - 1).trim();
+    }
+    return Long.parseLong(v) * unit;
+  }
+}
@@ -0,0 +1,213 @@
+package global.agnos.pdf;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Append-only journal of a batch run, one tab-separated line per processed input:
+ *
+ * sha256 outcome elapsedMs size mtimeMs input output phaseTimings
+ *
+ * where outcome is "ok", "error" or "timeout:<phase>" and phaseTimings reads
+ * "load=12,strip-js=0,...". Lines are flushed as they are written, so a killed
+ * run loses at most the entry in flight; a torn last line is ignored on reload.
+ *
+ * On {@link #open} the existing file is read once to index completed inputs by
+ * path/size/mtime, so unchanged files are skipped without being read at all.
+ * The content hash is recorded for auditing and for spotting duplicates
+ * afterwards; it is never used to skip a repair. The same file is meant to be
+ * loaded into throughput dashboards afterwards.
+ */
+public final class BatchJournal implements Closeable {
+
+  public static final String OK = "ok";
+  public static final String ERROR = "error";
+
+  static final String HEADER = "#sha256\toutcome\telapsedMs\tsize\tmtimeMs\tinput\toutput\tphaseTimings";
+
+  public record Entry(String sha256, String outcome, long elapsedMillis, long size, long modifiedMillis,
+      String input, String output, Map<RepairBudget.Phase, Long> phaseMillis) {
+
+    public boolean completed() {
+      return OK.equals(outcome);
+    }
+
+    String toLine() {
+      StringJoiner timings = new StringJoiner(",");
+      phaseMillis.forEach((p, ms) -> timings.add(p.label() + "=" + ms));
+      return String.join("\t", sha256, outcome, Long.toString(elapsedMillis), Long.toString(size),
+          Long.toString(modifiedMillis), escape(input), escape(output), timings.toString());
+    }
+
+    /** Parse one journal line, or return null for comments and torn/malformed lines. */
+    static Entry parse(String line) {
+      if (line.isEmpty() || line.startsWith("#"))
+        return null;
+      String[] f = line.split("\t", -1);
+      if (f.length != 8)
+        return null;
+      try {
+        Map<RepairBudget.Phase, Long> timings = new EnumMap<>(RepairBudget.Phase.class);
+        if (!f[7].isEmpty()) {
+          for (String kv : f[7].split(",")) {
+            int eq = kv.indexOf('=');
+            timings.put(RepairBudget.Phase.fromLabel(kv.substring(0, eq)), Long.parseLong(kv.substring(eq + 1)));
+          }
+        }
+        return new Entry(f[0], f[1], Long.parseLong(f[2]), Long.parseLong(f[3]), Long.parseLong(f[4]),
+            unescape(f[5]), unescape(f[6]), timings);
+      } catch (RuntimeException e) {
+        return null;
+      }
+    }
+  }
+
+  private final Path file;
+  private final Set<String> completedKeys = new HashSet<>();
+  private final BufferedWriter writer;
+  private int loaded;
+
+  private BatchJournal(Path file, BufferedWriter writer) {
+    this.file = file;
+    this.writer = writer;
+  }
+
+  /** Open (or create) the journal at {@code file}, indexing what earlier runs completed. */
+  public static BatchJournal open(Path file) throws IOException {
+    boolean fresh = !Files.exists(file) || Files.size(file) == 0;
+    List<Entry> entries = new ArrayList<>();
+    if (!fresh) {
+      // InputStreamReader replaces malformed bytes, so a torn multi-byte char can't abort the load
+      try (BufferedReader r = new BufferedReader(
+          new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = r.readLine()) != null) {
+          Entry e = Entry.parse(line);
+          if (e != null)
+            entries.add(e);
+        }
+      }
+    }
+
+    BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    BatchJournal journal = new BatchJournal(file, w);
+    // Replay in file order so later entries override earlier ones exactly as append() does
+    Set<String> inputs = new HashSet<>();
+    for (Entry e : entries) {
+      journal.index(e);
+      inputs.add(key(e.input(), e.size(), e.modifiedMillis()));
+    }
+    journal.loaded = inputs.size();
+    if (fresh) {
+      w.write(HEADER);
+      w.newLine();
+    } else if (!endsWithNewline(file)) {
+      // Terminate a line torn by a crash so the next entry starts clean
+      w.newLine();
+    }
+    w.flush();
+    return journal;
+  }
+
+  public Path file() {
+    return file;
+  }
+
+  /** Number of distinct inputs recorded by earlier runs. */
+  public int loadedEntries() {
+    return loaded;
+  }
+
+  /** True if this exact file (path, size, mtime) already completed; needs no read of the file. */
+  public synchronized boolean isCompleted(String input, long size, long modifiedMillis) {
+    return completedKeys.contains(key(input, size, modifiedMillis));
+  }
+
+  public synchronized void append(Entry e) throws IOException {
+    writer.write(e.toLine());
+    writer.newLine();
+    writer.flush();
+    index(e);
+  }
+
+  /** A later failure for the same file overrides an earlier ok (e.g. output deleted and redone). */
+  private void index(Entry e) {
+    String k = key(e.input(), e.size(), e.modifiedMillis());
+    if (e.completed())
+      completedKeys.add(k);
+    else
+      completedKeys.remove(k);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    writer.close();
+  }
+
+  static String sha256(Path file) throws IOException {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    byte[] buf = new byte[64 * 1024];
+    try (InputStream in = Files.newInputStream(file)) {
+      int n;
+      while ((n = in.read(buf)) > 0)
+        md.update(buf, 0, n);
+    }
+    return java.util.HexFormat.of().formatHex(md.digest());
+  }
+
+  private static boolean endsWithNewline(Path file) throws IOException {
+    try (var ch = Files.newByteChannel(file)) {
+      ch.position(ch.size() - 1);
+      java.nio.ByteBuffer last = java.nio.ByteBuffer.allocate(1);
+      ch.read(last);
+      return last.get(0) == '\n';
+    }
+  }
+
+  private static String key(String input, long size, long modifiedMillis) {
+    return input + '\u0000' + size + '\u0000' + modifiedMillis;
+  }
+
+  private static String escape(String s) {
+    return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+  }
+
+  private static String unescape(String s) {
+    if (s.indexOf('\\') < 0)
+      return s;
+    StringBuilder sb = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '\\' && i + 1 < s.length()) {
+        char n = s.charAt(++i);
+        sb.append(n == 't' ? '\t' : n == 'n' ? '\n' : n);
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+}
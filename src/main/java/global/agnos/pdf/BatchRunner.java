@@ -0,0 +1,155 @@
+package global.agnos.pdf;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Resumable batch run: repairs every *.pdf under an input directory into the
+ * same relative path under an output directory, recording each input in a
+ * {@link BatchJournal}. Re-running with the same journal skips inputs that
+ * already completed, so a run killed halfway picks up where it stopped.
+ */
+public final class BatchRunner {
+
+  static final String DEFAULT_JOURNAL = "xfa2acro-journal.tsv";
+
+  public record Summary(int total, int skipped, int succeeded, int failed, long elapsedMillis) {
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "Batch: %d inputs, %d skipped, %d repaired, %d failed in %d ms",
+          total, skipped, succeeded, failed, elapsedMillis);
+    }
+  }
+
+  /** What happened to one input. */
+  enum Result {
+    SKIPPED, OK, FAILED
+  }
+
+  private BatchRunner() {
+  }
+
+  /**
+   * Process {@code inDir} into {@code outDir}. {@code journalFile} defaults to
+   * {@value #DEFAULT_JOURNAL} inside {@code outDir} when null. Documents run
+   * concurrently under an {@link AdmissionScheduler} configured from the
+   * environment.
+   */
+  public static Summary run(Path inDir, Path outDir, Path journalFile, RepairBudget.Limits limits)
+      throws IOException {
+    try (AdmissionScheduler scheduler = AdmissionScheduler.fromEnv()) {
+      return run(inDir, outDir, journalFile, limits, scheduler);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Batch interrupted", e);
+    }
+  }
+
+  static Summary run(Path inDir, Path outDir, Path journalFile, RepairBudget.Limits limits,
+      AdmissionScheduler scheduler) throws IOException, InterruptedException {
+    long t0 = System.nanoTime();
+    Files.createDirectories(outDir);
+    Path journalPath = (journalFile != null) ? journalFile : outDir.resolve(DEFAULT_JOURNAL);
+    List<Path> inputs = listInputs(inDir, outDir);
+
+    int skipped = 0, ok = 0, failed = 0;
+    try (BatchJournal journal = BatchJournal.open(journalPath)) {
+      List<CompletableFuture<Result>> results = new ArrayList<>();
+      for (Path in : inputs) {
+        Path out = outputFor(inDir, outDir, in);
+        // Resolve skips here so completed inputs are never opened for a cost estimate
+        if (isDone(journal, in, out)) {
+          skipped++;
+          continue;
+        }
+        long cost = JobCostEstimator.estimateBytes(in);
+        results.add(scheduler.submit(cost, () -> processOne(journal, in, out, limits)));
+      }
+      for (CompletableFuture<Result> r : results) {
+        switch (r.join()) {
+          case SKIPPED -> skipped++;
+          case OK -> ok++;
+          case FAILED -> failed++;
+        }
+      }
+    }
+    return new Summary(inputs.size(), skipped, ok, failed, (System.nanoTime() - t0) / 1_000_000);
+  }
+
+  /** All *.pdf files under {@code inDir} in a stable order, excluding anything under {@code outDir}. */
+  static List<Path> listInputs(Path inDir, Path outDir) throws IOException {
+    Path outAbs = outDir.toAbsolutePath().normalize();
+    try (Stream<Path> walk = Files.walk(inDir)) {
+      return walk.filter(Files::isRegularFile)
+          .filter(p -> p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".pdf"))
+          .filter(p -> !p.toAbsolutePath().normalize().startsWith(outAbs))
+          .sorted()
+          .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+    }
+  }
+
+  static Path outputFor(Path inDir, Path outDir, Path in) {
+    return outDir.resolve(inDir.relativize(in).toString());
+  }
+
+  private static boolean isDone(BatchJournal journal, Path in, Path out) {
+    try {
+      BasicFileAttributes attrs = Files.readAttributes(in, BasicFileAttributes.class);
+      return journal.isCompleted(in.toAbsolutePath().normalize().toString(), attrs.size(),
+          attrs.lastModifiedTime().toMillis()) && Files.exists(out);
+    } catch (IOException e) {
+      return false; // let processOne report it
+    }
+  }
+
+  /**
+   * Repair one input unless the journal says it is already done, then journal
+   * the outcome. Failures are recorded and reported, never thrown, so one bad
+   * form doesn't stop the run.
+   */
+  static Result processOne(BatchJournal journal, Path in, Path out, RepairBudget.Limits limits) {
+    String input = in.toAbsolutePath().normalize().toString();
+    String output = out.toAbsolutePath().normalize().toString();
+    try {
+      BasicFileAttributes attrs = Files.readAttributes(in, BasicFileAttributes.class);
+      long size = attrs.size();
+      long mtime = attrs.lastModifiedTime().toMillis();
+      if (journal.isCompleted(input, size, mtime) && Files.exists(out))
+        return Result.SKIPPED;
+
+      long t0 = System.nanoTime();
+      String sha = BatchJournal.sha256(in);
+      Files.createDirectories(out.toAbsolutePath().getParent());
+
+      String outcome;
+      Map<RepairBudget.Phase, Long> timings;
+      try (RepairBudget budget = limits.start()) {
+        try {
+          ConvertAndRepair.convertAndRepair(in, out, budget);
+          outcome = BatchJournal.OK;
+        } catch (RepairTimeoutException e) {
+          outcome = "timeout:" + e.phase().label();
+          System.err.println("Failed: " + in + ": " + e.getMessage());
+        } catch (Exception e) {
+          outcome = BatchJournal.ERROR;
+          System.err.println("Failed: " + in + ": " + e);
+        }
+        timings = budget.phaseMillis();
+      }
+      journal.append(new BatchJournal.Entry(sha, outcome, (System.nanoTime() - t0) / 1_000_000,
+          size, mtime, input, output, timings));
+      return BatchJournal.OK.equals(outcome) ? Result.OK : Result.FAILED;
+    } catch (IOException e) {
+      System.err.println("Failed: " + in + ": " + e);
+      return Result.FAILED;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package global.agnos.pdf;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Training workload for the application class-data-sharing (AppCDS) archive.
+ *
+ * Run once with -XX:ArchiveClassesAtExit=<file>.jsa; every class loaded while
+ * repairing and listing a few synthetic forms is dumped into the archive, and
+ * later launches with -XX:SharedArchiveFile=<file>.jsa map them instead of
+ * loading and verifying them again. The build does this after shading (see
+ * pom.xml) and install.sh repeats it against the installed jar, because an
+ * archive is only valid for the JVM build and class path that produced it.
+ */
+public final class CdsTraining {
+
+  private CdsTraining() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    Path dir = Files.createTempDirectory("xfa2acro-cds");
+    try {
+      SyntheticForms.Spec[] specs = {
+          SyntheticForms.Spec.small(),
+          new SyntheticForms.Spec(3, 12, 64 << 10, true),
+          new SyntheticForms.Spec(2, 4, 0, false),
+      };
+      for (int i = 0; i < specs.length; i++) {
+        Path in = SyntheticForms.write(dir.resolve("train-" + i + ".pdf"), specs[i]);
+        Path out = dir.resolve("train-" + i + "_clean.pdf");
+        // Same path as a CLI run, minus the Aspose call
+        try (RepairBudget budget = RepairBudget.Limits.fromEnv().start()) {
+          ConvertAndRepair.repairPdfInToOut(in, out, budget);
+        }
+        ConvertAndRepair.main(new String[] { "--list-fields", out.toString() });
+      }
+    } finally {
+      try (Stream<Path> files = Files.walk(dir)) {
+        files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+      }
+    }
+  }
+}
@@ -1,7 +1,12 @@
 package global.agnos.pdf;
 
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.net.UnknownHostException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
@@ -9,6 +14,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -23,9 +29,6 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.cos.COSArray;
@@ -35,6 +38,7 @@ import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.cos.COSString;
 import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.RandomAccessRead;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDDocumentCatalog;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -52,6 +56,7 @@ import org.apache.pdfbox.pdmodel.interactive.form.PDTextField;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 
 /**
  * Normalize & repair AcroForm PDFs by attaching orphan widget annotations to
@@ -66,9 +71,16 @@ import org.w3c.dom.NodeList;
  *
  * Optional (list terminal field names):
  * java -jar xfa2acro-repair.jar --list-fields <file.pdf>
+ *
+ * Optional (resumable batch, see {@link BatchRunner}):
+ * java -jar xfa2acro-repair.jar --batch <inDir> <outDir> [journal.tsv]
  */
 public class ConvertAndRepair {
 
+  /** DOM nodes visited between budget checks while stripping XFA. */
+  static final int CHECKPOINT_EVERY = 1024;
+  private static final String ASPOSE_CLOUD_URL = "https://api.aspose.cloud";
+
   public static void main(String[] args) throws Exception {
     if (args.length < 1)
       usageAndExit();
@@ -78,6 +90,16 @@ public class ConvertAndRepair {
       listFields(Path.of(args[1]));
       return;
     }
+    // Resumable batch run over a directory tree
+    if ("--batch".equals(args[0])) {
+      if (args.length < 3 || args.length > 4)
+        usageAndExit();
+      Path journal = (args.length == 4) ? Path.of(args[3]) : null;
+      BatchRunner.Summary summary = BatchRunner.run(Path.of(args[1]), Path.of(args[2]), journal,
+          RepairBudget.Limits.fromEnv());
+      System.out.println(summary);
+      System.exit(summary.failed() == 0 ? 0 : 1);
+    }
     if (args.length > 2)
       usageAndExit();
 
@@ -89,19 +111,43 @@ public class ConvertAndRepair {
     String outName = (args.length == 2) ? args[1] : deriveOutputName(in.toString());
     Path out = Path.of(outName);
 
-    // 0) If Aspose Cloud creds are present, try converting XFA → AcroForm first.
-    boolean convertedByAspose = tryAsposeCloudConvert(in, out);
+    try (RepairBudget budget = RepairBudget.Limits.fromEnv().start()) {
+      if (convertAndRepair(in, out, budget)) {
+        System.out.println("Converted (Aspose Cloud) + cleaned & repaired (PDFBox): " + out.toAbsolutePath());
+      } else {
+        System.out.println("Cleaned & repaired (PDFBox): " + out.toAbsolutePath());
+      }
+    } catch (RepairTimeoutException e) {
+      System.err.println("Failed: " + in + ": " + e.getMessage());
+      System.exit(4);
+    }
+  }
 
-    if (convertedByAspose) {
-      // Even if converted, still run local cleanup/repair (idempotent)
-      repairPdfInToOut(out, out);
-      System.out.println("Converted (Aspose Cloud) + cleaned & repaired (PDFBox): " + out.toAbsolutePath());
-      return;
+  /**
+   * Full pipeline for one document. Returns true if Aspose Cloud did the XFA
+   * conversion, false if only the local cleanup & repair ran.
+   */
+  static boolean convertAndRepair(Path in, Path out, RepairBudget budget) throws Exception {
+    // 0) If Aspose Cloud creds are present, try converting XFA → AcroForm first.
+    // The converted PDF still carries its scripts, so it goes to a temp sibling and
+    // only the repaired result ever reaches `out` (nothing is left there on timeout).
+    budget.enterPhase(RepairBudget.Phase.CONVERT);
+    if (asposeConfigured()) {
+      Path converted = Files.createTempFile(out.toAbsolutePath().getParent(), out.getFileName().toString(), ".aspose");
+      try {
+        if (tryAsposeCloudConvert(in, converted)) {
+          // Even if converted, still run local cleanup/repair (idempotent)
+          repairPdfInToOut(converted, out, budget);
+          return true;
+        }
+      } finally {
+        Files.deleteIfExists(converted);
+      }
     }
 
     // Fallback: local cleanup & repair only (input → output)
-    repairPdfInToOut(in, out);
-    System.out.println("Cleaned & repaired (PDFBox): " + out.toAbsolutePath());
+    repairPdfInToOut(in, out, budget);
+    return false;
   }
 
   /*
@@ -109,12 +155,18 @@ public class ConvertAndRepair {
    * =============================
    */
 
+  private static boolean asposeConfigured() {
+    String clientId = setting("ASPOSE_CLIENT_ID");
+    return clientId != null && !clientId.isBlank() && setting("ASPOSE_CLIENT_SECRET") != null;
+  }
+
   private static boolean tryAsposeCloudConvert(Path inputPath, Path outputPath) {
-    String clientId = System.getenv("ASPOSE_CLIENT_ID");
-    String clientSecret = System.getenv("ASPOSE_CLIENT_SECRET");
-    if (clientId == null || clientSecret == null) {
+    if (!asposeConfigured()) {
       return false; // not configured, skip
     }
+    String clientId = setting("ASPOSE_CLIENT_ID");
+    String clientSecret = setting("ASPOSE_CLIENT_SECRET");
+    String baseUrl = asposeBaseUrl();
 
     try {
       HttpClient http = HttpClient.newBuilder()
@@ -126,7 +178,7 @@ public class ConvertAndRepair {
           + "&client_secret=" + URLEncoder.encode(clientSecret, "UTF-8");
 
       HttpRequest tokenReq = HttpRequest.newBuilder()
-          .uri(URI.create("https://api.aspose.cloud/connect/token"))
+          .uri(URI.create(baseUrl + "/connect/token"))
           .header("Content-Type", "application/x-www-form-urlencoded")
           .header("Accept", "application/json")
           .timeout(Duration.ofSeconds(20))
@@ -146,7 +198,7 @@ public class ConvertAndRepair {
 
       // 2) Convert XFA → AcroForm; request returns the PDF bytes directly
       HttpRequest convReq = HttpRequest.newBuilder()
-          .uri(URI.create("https://api.aspose.cloud/v3.0/pdf/convert/xfatoacroform"))
+          .uri(URI.create(baseUrl + "/v3.0/pdf/convert/xfatoacroform"))
           .header("Authorization", "Bearer " + accessToken)
           .header("Accept", "application/pdf")
           .timeout(Duration.ofMinutes(2))
@@ -168,6 +220,44 @@ public class ConvertAndRepair {
     }
   }
 
+  /**
+   * The Aspose endpoint. ASPOSE_BASE_URL may only redirect it to a literal
+   * loopback address (the load test's {@link StubConversionServer}), so the
+   * client secret is never sent anywhere but the real service or this machine.
+   */
+  static String asposeBaseUrl() {
+    String override = setting("ASPOSE_BASE_URL");
+    if (override == null || override.isBlank())
+      return ASPOSE_CLOUD_URL;
+    try {
+      String host = URI.create(override.trim()).getHost();
+      if (host != null && isLoopbackLiteral(host))
+        return override.trim();
+    } catch (IllegalArgumentException e) {
+      // fall through to the warning
+    }
+    System.err.println("Ignoring ASPOSE_BASE_URL (only loopback addresses are allowed): " + override);
+    return ASPOSE_CLOUD_URL;
+  }
+
+  /** Literal addresses only, so no name lookup decides where the credentials go. */
+  private static boolean isLoopbackLiteral(String host) {
+    String h = (host.startsWith("[") && host.endsWith("]")) ? host.substring(1, host.length() - 1) : host;
+    if (!h.contains(":") && !h.matches("[0-9.]+"))
+      return false;
+    try {
+      return InetAddress.getByName(h).isLoopbackAddress();
+    } catch (UnknownHostException e) {
+      return false;
+    }
+  }
+
+  /** Environment setting, overridable by a system property of the same name. */
+  private static String setting(String name) {
+    String v = System.getProperty(name);
+    return (v != null) ? v : System.getenv(name);
+  }
+
   private static String extractJsonField(String json, String field) {
     String key = "\"" + field + "\"";
     int i = json.indexOf(key);
@@ -190,76 +280,111 @@ public class ConvertAndRepair {
    * ===============================
    */
 
-  private static void repairPdfInToOut(Path source, Path dest) throws Exception {
-    try (PDDocument doc = Loader.loadPDF(source.toFile())) {
-      doc.setAllSecurityToBeRemoved(true);
+  static void repairPdfInToOut(Path source, Path dest) throws Exception {
+    try (RepairBudget budget = RepairBudget.unbounded()) {
+      repairPdfInToOut(source, dest, budget);
+    }
+  }
+
+  /**
+   * Clean & repair {@code source} into {@code dest} within {@code budget}.
+   * Output is written to a sibling temp file and moved into place only on
+   * success, so a timed-out document never leaves a half-written PDF behind.
+   */
+  static void repairPdfInToOut(Path source, Path dest, RepairBudget budget) throws Exception {
+    Path parent = dest.toAbsolutePath().getParent();
+    Path tmp = Files.createTempFile(parent, dest.getFileName().toString(), ".part");
+    try {
+      budget.enterPhase(RepairBudget.Phase.LOAD);
+      try (RandomAccessRead src = budget.openGuarded(source);
+          PDDocument doc = Loader.loadPDF(src)) {
+        repairDocument(doc, budget);
+
+        budget.enterPhase(RepairBudget.Phase.SAVE);
+        try (OutputStream os = budget.guard(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+          doc.save(os);
+        }
+      }
+      Files.move(tmp, dest, StandardCopyOption.REPLACE_EXISTING);
+    } catch (Exception e) {
+      // Interrupts from the watchdog surface as I/O errors; report them as the timeout they are.
+      budget.checkpoint();
+      throw e;
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private static void repairDocument(PDDocument doc, RepairBudget budget) throws Exception {
+    doc.setAllSecurityToBeRemoved(true);
 
-      // NEW: remove all AcroForm/Doc/Page/Annot JavaScript entry points
-      stripAllJavaScript(doc);
+    // NEW: remove all AcroForm/Doc/Page/Annot JavaScript entry points
+    budget.enterPhase(RepairBudget.Phase.STRIP_JS);
+    stripAllJavaScript(doc, budget);
 
-      // NEW: remove XFA <event> and <script ...javascript...> from the XFA packets
-      stripXfaScripts(doc);
+    // NEW: remove XFA <event> and <script ...javascript...> from the XFA packets
+    budget.enterPhase(RepairBudget.Phase.STRIP_XFA);
+    stripXfaScripts(doc, budget);
 
-      // Ensure AcroForm + minimal defaults (existing logic)
-      PDDocumentCatalog catalog = doc.getDocumentCatalog();
-      PDAcroForm acro = catalog.getAcroForm();
-      if (acro == null) {
-        acro = new PDAcroForm(doc);
-        catalog.setAcroForm(acro);
-      }
-      ensureAcroDefaults(acro);
+    // Ensure AcroForm + minimal defaults (existing logic)
+    budget.enterPhase(RepairBudget.Phase.REPAIR);
+    PDDocumentCatalog catalog = doc.getDocumentCatalog();
+    PDAcroForm acro = catalog.getAcroForm();
+    if (acro == null) {
+      acro = new PDAcroForm(doc);
+      catalog.setAcroForm(acro);
+    }
+    ensureAcroDefaults(acro);
 
-      // Re-attach orphan widgets to fields (existing logic)
-      Map<String, PDField> byName = new HashMap<>();
-      for (PDField f : acro.getFields()) {
-        byName.put(f.getPartialName(), f);
-      }
+    // Re-attach orphan widgets to fields (existing logic)
+    Map<String, PDField> byName = new HashMap<>();
+    for (PDField f : acro.getFields()) {
+      byName.put(f.getPartialName(), f);
+    }
 
-      for (PDPage page : doc.getPages()) {
-        for (PDAnnotation ann : page.getAnnotations()) {
-          if (!(ann instanceof PDAnnotationWidget))
-            continue;
-          PDAnnotationWidget widget = (PDAnnotationWidget) ann;
-          COSDictionary wCos = widget.getCOSObject();
-
-          wCos.setItem(COSName.SUBTYPE, COSName.WIDGET);
-
-          COSBase ft = wCos.getDictionaryObject(COSName.FT);
-          COSBase t = wCos.getDictionaryObject(COSName.T);
-          if (ft == null || t == null)
-            continue;
-
-          if (wCos.getDictionaryObject(COSName.PARENT) != null)
-            continue;
-
-          String fullName = readName(t);
-          if (fullName == null || fullName.isBlank())
-            continue;
-          if (fullName.startsWith("u:"))
-            fullName = fullName.substring(2);
-
-          String pname = partialNameOf(fullName);
-          String uniqueName = uniquePartialName(pname, byName);
-
-          PDField field = byName.get(uniqueName);
-          if (field == null) {
-            field = createConcreteField(acro, ft, uniqueName);
-            field.getCOSObject().setItem(COSName.DA, new COSString("/Helv 0 Tf 0 g"));
-            acro.getFields().add(field);
-            byName.put(uniqueName, field);
-          }
+    for (PDPage page : doc.getPages()) {
+      budget.checkpoint();
+      for (PDAnnotation ann : page.getAnnotations()) {
+        if (!(ann instanceof PDAnnotationWidget))
+          continue;
+        PDAnnotationWidget widget = (PDAnnotationWidget) ann;
+        COSDictionary wCos = widget.getCOSObject();
 
-          COSArray kids = field.getCOSObject().getCOSArray(COSName.KIDS);
-          if (kids == null) {
-            kids = new COSArray();
-            field.getCOSObject().setItem(COSName.KIDS, kids);
-          }
-          kids.add(wCos);
-          wCos.setItem(COSName.PARENT, field.getCOSObject());
+        wCos.setItem(COSName.SUBTYPE, COSName.WIDGET);
+
+        COSBase ft = wCos.getDictionaryObject(COSName.FT);
+        COSBase t = wCos.getDictionaryObject(COSName.T);
+        if (ft == null || t == null)
+          continue;
+
+        if (wCos.getDictionaryObject(COSName.PARENT) != null)
+          continue;
+
+        String fullName = readName(t);
+        if (fullName == null || fullName.isBlank())
+          continue;
+        if (fullName.startsWith("u:"))
+          fullName = fullName.substring(2);
+
+        String pname = partialNameOf(fullName);
+        String uniqueName = uniquePartialName(pname, byName);
+
+        PDField field = byName.get(uniqueName);
+        if (field == null) {
+          field = createConcreteField(acro, ft, uniqueName);
+          field.getCOSObject().setItem(COSName.DA, new COSString("/Helv 0 Tf 0 g"));
+          acro.getFields().add(field);
+          byName.put(uniqueName, field);
         }
-      }
 
-      doc.save(dest.toFile());
+        COSArray kids = field.getCOSObject().getCOSArray(COSName.KIDS);
+        if (kids == null) {
+          kids = new COSArray();
+          field.getCOSObject().setItem(COSName.KIDS, kids);
+        }
+        kids.add(wCos);
+        wCos.setItem(COSName.PARENT, field.getCOSObject());
+      }
     }
   }
 
@@ -268,7 +393,7 @@ public class ConvertAndRepair {
    * -------------------------------
    */
 
-  private static void stripAllJavaScript(PDDocument doc) throws Exception {
+  private static void stripAllJavaScript(PDDocument doc, RepairBudget budget) throws Exception {
     PDDocumentCatalog catalog = doc.getDocumentCatalog();
     if (catalog == null)
       return;
@@ -288,6 +413,7 @@ public class ConvertAndRepair {
 
     // Page & annotation actions
     for (PDPage page : doc.getPages()) {
+      budget.checkpoint();
       COSDictionary p = page.getCOSObject();
       p.removeItem(COSName.AA);
 
@@ -307,7 +433,7 @@ public class ConvertAndRepair {
    * /AcroForm /XFA -------------------------------
    */
 
-  private static void stripXfaScripts(PDDocument doc) throws Exception {
+  private static void stripXfaScripts(PDDocument doc, RepairBudget budget) throws Exception {
     PDDocumentCatalog catalog = doc.getDocumentCatalog();
     if (catalog == null)
       return;
@@ -337,8 +463,8 @@ public class ConvertAndRepair {
 
         if (!(streamObj instanceof COSStream s))
           continue;
-        byte[] xmlBytes = IOUtils.toByteArray(s.createInputStream());
-        byte[] cleaned = removeXfaEventsAndJs(xmlBytes);
+        byte[] xmlBytes = IOUtils.toByteArray(budget.guard(s.createInputStream()));
+        byte[] cleaned = removeXfaEventsAndJs(xmlBytes, budget);
         if (cleaned != null) {
           // Replace stream content (compress with Flate)
           try (var out = s.createOutputStream(COSName.FLATE_DECODE)) {
@@ -349,8 +475,8 @@ public class ConvertAndRepair {
         }
       }
     } else if (xfaBase instanceof COSStream s) {
-      byte[] xmlBytes = IOUtils.toByteArray(s.createInputStream());
-      byte[] cleaned = removeXfaEventsAndJs(xmlBytes);
+      byte[] xmlBytes = IOUtils.toByteArray(budget.guard(s.createInputStream()));
+      byte[] cleaned = removeXfaEventsAndJs(xmlBytes, budget);
       if (cleaned != null) {
         try (var out = s.createOutputStream(COSName.FLATE_DECODE)) {
           out.write(cleaned);
@@ -364,29 +490,33 @@ public class ConvertAndRepair {
    * Remove all <event>…</event> nodes and any <script> whose @contentType
    * contains "javascript"
    * from an XFA XML packet. Returns cleaned UTF-8 bytes, or null if parsing
-   * fails.
+   * fails. Throws {@link RepairTimeoutException} if {@code budget} runs out.
    */
-  private static byte[] removeXfaEventsAndJs(byte[] xmlBytes) {
-    try {
-      Charset cs = detectXmlCharset(xmlBytes);
-      String xml = new String(xmlBytes, cs);
+  static byte[] removeXfaEventsAndJs(byte[] xmlBytes, RepairBudget budget) {
+    return removeXfaEventsAndJs(new java.io.ByteArrayInputStream(xmlBytes), detectXmlCharset(xmlBytes), budget);
+  }
 
+  static byte[] removeXfaEventsAndJs(InputStream xml, Charset cs, RepairBudget budget) {
+    try {
       DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
       dbf.setNamespaceAware(false); // XFA often has no namespaces; keep this simple
       dbf.setExpandEntityReferences(false);
       DocumentBuilder db = dbf.newDocumentBuilder();
-      Document doc = db.parse(new java.io.ByteArrayInputStream(xml.getBytes(cs)));
-
-      XPath xp = XPathFactory.newInstance().newXPath();
+      InputSource src = new InputSource(budget.guard(xml));
+      src.setEncoding(cs.name());
+      Document doc = db.parse(src);
+      budget.checkpoint();
 
       // 1) Remove all <event> nodes
-      NodeList eventNodes = (NodeList) xp.evaluate("//event", doc, XPathConstants.NODESET);
-      removeAll(eventNodes);
+      List<Node> eventNodes = elements(doc, "event", budget);
+      removeAll(eventNodes, budget);
 
       // 2) Remove any <script> node with contentType ~= "javascript"
-      NodeList scriptNodes = (NodeList) xp.evaluate("//script", doc, XPathConstants.NODESET);
-      for (int i = scriptNodes.getLength() - 1; i >= 0; i--) {
-        Node n = scriptNodes.item(i);
+      List<Node> scriptNodes = elements(doc, "script", budget);
+      for (int i = scriptNodes.size() - 1; i >= 0; i--) {
+        if (i % CHECKPOINT_EVERY == 0)
+          budget.checkpoint();
+        Node n = scriptNodes.get(i);
         Node attr = (n.getAttributes() != null) ? n.getAttributes().getNamedItem("contentType") : null;
         if (attr != null) {
           String v = attr.getNodeValue();
@@ -408,17 +538,38 @@ public class ConvertAndRepair {
       t.setOutputProperty(OutputKeys.INDENT, "no"); // keep packet compact
 
       java.io.ByteArrayOutputStream bout = new java.io.ByteArrayOutputStream();
-      t.transform(new DOMSource(doc), new StreamResult(bout));
+      t.transform(new DOMSource(doc), new StreamResult(budget.guard(bout)));
       return bout.toByteArray();
     } catch (Exception e) {
+      // A cancelled parse must fail the document, not fall back to leaving the packet as-is
+      budget.checkpoint();
       System.err.println("XFA strip error: " + e.getMessage());
       return null;
     }
   }
 
-  private static void removeAll(NodeList nodes) {
-    for (int i = nodes.getLength() - 1; i >= 0; i--) {
-      Node n = nodes.item(i);
+  /**
+   * Snapshot of every element named {@code tag}, in document order. Walks the
+   * DOM itself rather than via XPath so a huge packet can be cancelled part-way.
+   */
+  static List<Node> elements(Document doc, String tag, RepairBudget budget) {
+    NodeList live = doc.getElementsByTagName(tag);
+    List<Node> nodes = new ArrayList<>();
+    for (int i = 0;; i++) {
+      if (i % CHECKPOINT_EVERY == 0)
+        budget.checkpoint();
+      Node n = live.item(i); // sequential item() is cheap; getLength() would walk the whole tree first
+      if (n == null)
+        return nodes;
+      nodes.add(n);
+    }
+  }
+
+  private static void removeAll(List<Node> nodes, RepairBudget budget) {
+    for (int i = nodes.size() - 1; i >= 0; i--) {
+      if (i % CHECKPOINT_EVERY == 0)
+        budget.checkpoint();
+      Node n = nodes.get(i);
       if (n != null && n.getParentNode() != null) {
         n.getParentNode().removeChild(n);
       }
@@ -453,6 +604,9 @@ public class ConvertAndRepair {
 
         Optional (list terminal field names):
           java -jar xfa2acro-repair.jar --list-fields <file.pdf>
+
+        Optional (resumable batch over every *.pdf under <inDir>):
+          java -jar xfa2acro-repair.jar --batch <inDir> <outDir> [journal.tsv]
         """);
     System.exit(2);
   }
@@ -0,0 +1,98 @@
+package global.agnos.pdf;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Rough heap cost of repairing one PDF, used by {@link AdmissionScheduler}.
+ *
+ * Opening a PDF with PDFBox only parses the trailer and xref, so reading the
+ * page count and the XFA stream dictionaries is cheap even for very large
+ * files; no stream is decoded. The factors below are deliberately pessimistic:
+ * over-estimating costs a little parallelism, under-estimating costs an OOM.
+ *
+ * A damaged xref makes PDFBox fall back to a brute-force scan of the whole
+ * file, and the probe runs on the single thread that feeds the scheduler, so
+ * it gets its own short LOAD budget; on timeout the size-only estimate is used.
+ */
+final class JobCostEstimator {
+
+  /** Fixed overhead per job: parser buffers, font setup, output buffering. */
+  static final long BASE_BYTES = 8L << 20;
+  /** Parsed COS objects plus the save-time copy, relative to the file size. */
+  static final long FILE_FACTOR = 3;
+  /** Per page: page dictionary, resources and annotation objects. */
+  static final long PAGE_BYTES = 64L << 10;
+  /** Decoded XFA text held as bytes, String, DOM and serialized copy. */
+  static final long XFA_DOM_FACTOR = 12;
+  /** Assumed inflate ratio for filtered XFA packets (their decoded length is unknown). */
+  static final long XFA_INFLATE_FACTOR = 5;
+  /** Longest the probe may hold up admission before falling back to the file size. */
+  static final Duration PROBE_LIMIT = Duration.ofSeconds(2);
+
+  private JobCostEstimator() {
+  }
+
+  /** Estimated peak heap bytes for {@code pdf}; falls back to a size-only estimate if it can't be opened. */
+  static long estimateBytes(Path pdf) {
+    return estimateBytes(pdf, PROBE_LIMIT);
+  }
+
+  static long estimateBytes(Path pdf, Duration probeLimit) {
+    long fileSize;
+    try {
+      fileSize = Files.size(pdf);
+    } catch (Exception e) {
+      return BASE_BYTES;
+    }
+    RepairBudget.Limits limits = new RepairBudget.Limits(null, Map.of(RepairBudget.Phase.LOAD, probeLimit));
+    try (RepairBudget budget = limits.start()) {
+      budget.enterPhase(RepairBudget.Phase.LOAD);
+      // loadPDF only closes the source through a document it returns, so close it here too
+      try (RandomAccessRead src = budget.openGuarded(pdf); PDDocument doc = Loader.loadPDF(src)) {
+        return estimate(fileSize, doc.getNumberOfPages(), xfaDecodedBytes(doc));
+      }
+    } catch (Exception e) {
+      // Unparseable or too slow to open: charge it as one big packet rather than stall admission
+      return estimate(fileSize, 0, fileSize * XFA_INFLATE_FACTOR);
+    }
+  }
+
+  static long estimate(long fileSize, int pages, long xfaBytes) {
+    return BASE_BYTES + fileSize * FILE_FACTOR + pages * PAGE_BYTES + xfaBytes * XFA_DOM_FACTOR;
+  }
+
+  /** Upper bound on decoded XFA size, from the packet stream dictionaries alone. */
+  private static long xfaDecodedBytes(PDDocument doc) {
+    COSDictionary acro = doc.getDocumentCatalog().getCOSObject().getCOSDictionary(COSName.ACRO_FORM);
+    if (acro == null)
+      return 0;
+    COSBase xfa = acro.getDictionaryObject(COSName.getPDFName("XFA"));
+    if (xfa instanceof COSStream s)
+      return decodedLength(s);
+    long total = 0;
+    if (xfa instanceof COSArray arr) {
+      for (int i = 1; i < arr.size(); i += 2) {
+        if (arr.getObject(i) instanceof COSStream s)
+          total += decodedLength(s);
+      }
+    }
+    return total;
+  }
+
+  private static long decodedLength(COSStream s) {
+    long encoded = s.getLength();
+    return (s.getFilters() == null) ? encoded : encoded * XFA_INFLATE_FACTOR;
+  }
+}
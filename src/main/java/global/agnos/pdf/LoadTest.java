@@ -0,0 +1,292 @@
+package global.agnos.pdf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load generator and throughput regression check.
+ *
+ * Generates a seeded corpus of synthetic forms (see {@link SyntheticForms}),
+ * then repairs the whole corpus once per concurrency level on a fixed pool,
+ * in-process, through the same pipeline as the CLI. With --stub every document
+ * also makes the Aspose round trip against a local {@link StubConversionServer}.
+ * Reports documents/second, p50/p99 latency and peak RSS per level, and fails
+ * (exit 1) if throughput, p50 or peak RSS is worse than the baseline file by
+ * more than its tolerance. p99 is reported only: over a corpus this size it
+ * rests on a single document and is too noisy to gate on.
+ *
+ * Usage:
+ * java -cp xfa2acro-repair.jar global.agnos.pdf.LoadTest [options]
+ * --docs 60 --warmup 10 --concurrency 1,4,8 --seed 42
+ * --large-xfa-kb 1024 --pages 80 --stub [latencyMs]
+ * --baseline perf/load-baseline.properties [--write-baseline]
+ */
+public final class LoadTest {
+
+  record Options(int docs, int warmup, List<Integer> concurrency, long seed, int largeXfaKb, int manyPages,
+      long stubLatencyMillis, Path baseline, boolean writeBaseline) {
+
+    static Options parse(String[] args) {
+      int docs = 60, warmup = 10, largeXfaKb = 1024, pages = 80;
+      long seed = 42, stub = -1;
+      List<Integer> levels = List.of(1, 4, 8);
+      Path baseline = null;
+      boolean write = false;
+      for (int i = 0; i < args.length; i++) {
+        switch (args[i]) {
+          case "--docs" -> docs = Integer.parseInt(args[++i]);
+          case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+          case "--seed" -> seed = Long.parseLong(args[++i]);
+          case "--large-xfa-kb" -> largeXfaKb = Integer.parseInt(args[++i]);
+          case "--pages" -> pages = Integer.parseInt(args[++i]);
+          case "--baseline" -> baseline = Path.of(args[++i]);
+          case "--write-baseline" -> write = true;
+          case "--concurrency" -> levels = Stream.of(args[++i].split(",")).map(String::trim)
+              .map(Integer::valueOf).toList();
+          case "--stub" -> stub = (i + 1 < args.length && !args[i + 1].startsWith("--"))
+              ? Long.parseLong(args[++i]) : 50;
+          default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+      }
+      return new Options(docs, warmup, levels, seed, largeXfaKb, pages, stub, baseline, write);
+    }
+  }
+
+  record Result(int concurrency, int docs, int failed, double docsPerSec, double p50Millis, double p99Millis,
+      long peakRssMb) {
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "c=%-3d docs %4d  failed %3d  %8.2f docs/s  p50 %8.1f ms  p99 %8.1f ms  peak RSS %s",
+          concurrency, docs, failed, docsPerSec, p50Millis, p99Millis, peakRssMb < 0 ? "n/a" : peakRssMb + " MB");
+    }
+  }
+
+  private LoadTest() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options opt = Options.parse(args);
+    Path work = Files.createTempDirectory("xfa2acro-load");
+    StubConversionServer stub = null;
+    int status;
+    try {
+      List<Path> corpus = generateCorpus(work.resolve("corpus"), opt);
+      if (opt.stubLatencyMillis() >= 0) {
+        stub = new StubConversionServer(opt.stubLatencyMillis());
+        System.setProperty("ASPOSE_BASE_URL", stub.baseUrl());
+        System.setProperty("ASPOSE_CLIENT_ID", "stub");
+        System.setProperty("ASPOSE_CLIENT_SECRET", "stub");
+      } else {
+        // Never let ambient credentials turn a load test into a cloud bill
+        System.setProperty("ASPOSE_CLIENT_ID", "");
+      }
+      System.out.printf(Locale.ROOT, "corpus: %d forms (seed %d), stub: %s%n", corpus.size(), opt.seed(),
+          stub == null ? "off" : stub.baseUrl() + " +" + opt.stubLatencyMillis() + " ms");
+
+      runLevel(corpus.subList(0, Math.min(opt.warmup(), corpus.size())), work.resolve("warmup"), 1);
+
+      List<Result> results = new ArrayList<>();
+      for (int level : opt.concurrency()) {
+        Result r = runLevel(corpus, work.resolve("out-c" + level), level);
+        System.out.println(r);
+        results.add(r);
+      }
+
+      status = checkBaseline(opt, results);
+    } finally {
+      if (stub != null)
+        stub.close();
+      deleteTree(work);
+    }
+    // Only after cleanup: System.exit inside the try would skip the finally
+    if (status != 0)
+      System.exit(status);
+  }
+
+  /** Write or compare against the baseline file; 1 if anything regressed. */
+  private static int checkBaseline(Options opt, List<Result> results) throws IOException {
+    if (opt.baseline() == null)
+      return 0;
+    if (opt.writeBaseline()) {
+      writeBaseline(opt.baseline(), results);
+      System.out.println("Baseline written: " + opt.baseline());
+      return 0;
+    }
+    List<String> regressions = regressions(results, readBaseline(opt.baseline()));
+    if (!regressions.isEmpty()) {
+      regressions.forEach(r -> System.err.println("REGRESSION " + r));
+      return 1;
+    }
+    System.out.println("Within baseline: " + opt.baseline());
+    return 0;
+  }
+
+  /**
+   * Seeded mix: half small forms, then orphan-heavy, large-XFA and many-page
+   * forms, all with JavaScript actions except the many-page ones.
+   */
+  static List<Path> generateCorpus(Path dir, Options opt) throws Exception {
+    Files.createDirectories(dir);
+    Random rnd = new Random(opt.seed());
+    List<Path> corpus = new ArrayList<>();
+    for (int i = 0; i < opt.docs(); i++) {
+      int pick = rnd.nextInt(100);
+      SyntheticForms.Spec spec;
+      if (pick < 50)
+        spec = SyntheticForms.Spec.small();
+      else if (pick < 70)
+        spec = new SyntheticForms.Spec(2, 40 + rnd.nextInt(40), 16 << 10, true);
+      else if (pick < 85)
+        spec = new SyntheticForms.Spec(1, 5, opt.largeXfaKb() << 10, true);
+      else
+        spec = new SyntheticForms.Spec(opt.manyPages(), 4, 8 << 10, false);
+      corpus.add(SyntheticForms.write(dir.resolve(String.format(Locale.ROOT, "form-%04d.pdf", i)), spec));
+    }
+    return corpus;
+  }
+
+  static Result runLevel(List<Path> corpus, Path outDir, int concurrency) throws Exception {
+    Files.createDirectories(outDir);
+    resetPeakRss();
+    ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+    List<Future<Double>> futures = new ArrayList<>();
+    long t0 = System.nanoTime();
+    try {
+      for (Path in : corpus) {
+        Path out = outDir.resolve(in.getFileName());
+        futures.add(pool.submit(() -> {
+          long s = System.nanoTime();
+          try (RepairBudget budget = RepairBudget.Limits.fromEnv().start()) {
+            ConvertAndRepair.convertAndRepair(in, out, budget);
+          }
+          return (System.nanoTime() - s) / 1e6;
+        }));
+      }
+      List<Double> latencies = new ArrayList<>();
+      int failed = 0;
+      for (Future<Double> f : futures) {
+        try {
+          latencies.add(f.get());
+        } catch (Exception e) {
+          failed++;
+          System.err.println("Failed: " + e.getCause());
+        }
+      }
+      double wallSec = (System.nanoTime() - t0) / 1e9;
+      if (latencies.isEmpty())
+        latencies = Collections.singletonList(Double.NaN);
+      return new Result(concurrency, corpus.size(), failed, (corpus.size() - failed) / wallSec,
+          percentile(latencies, 50), percentile(latencies, 99), peakRssMb());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /** Nearest-rank percentile. */
+  private static double percentile(List<Double> values, double pct) {
+    List<Double> sorted = new ArrayList<>(values);
+    Collections.sort(sorted);
+    int idx = (int) Math.ceil(pct / 100.0 * sorted.size()) - 1;
+    return sorted.get(Math.max(0, Math.min(idx, sorted.size() - 1)));
+  }
+
+  /* ------------------------------- Baseline ------------------------------- */
+
+  /**
+   * Compare against the baseline: throughput may not drop, and p50 latency or
+   * peak RSS may not grow, by more than {@code tolerance} (default 0.25). Levels
+   * or metrics missing from the baseline are not checked; any failed document
+   * is always a regression.
+   */
+  static List<String> regressions(List<Result> results, Properties baseline) {
+    double tol = Double.parseDouble(baseline.getProperty("tolerance", "0.25"));
+    List<String> out = new ArrayList<>();
+    for (Result r : results) {
+      String k = "c" + r.concurrency() + ".";
+      if (r.failed() > 0)
+        out.add(k + "failed: " + r.failed() + " documents");
+      checkMin(out, baseline, k + "docsPerSec", r.docsPerSec(), tol);
+      checkMax(out, baseline, k + "p50Ms", r.p50Millis(), tol);
+      if (r.peakRssMb() >= 0)
+        checkMax(out, baseline, k + "peakRssMb", r.peakRssMb(), tol);
+    }
+    return out;
+  }
+
+  private static void checkMin(List<String> out, Properties b, String key, double actual, double tol) {
+    String v = b.getProperty(key);
+    if (v != null && actual < Double.parseDouble(v) * (1 - tol))
+      out.add(String.format(Locale.ROOT, "%s: %.2f < baseline %s - %.0f%%", key, actual, v, tol * 100));
+  }
+
+  private static void checkMax(List<String> out, Properties b, String key, double actual, double tol) {
+    String v = b.getProperty(key);
+    if (v != null && actual > Double.parseDouble(v) * (1 + tol))
+      out.add(String.format(Locale.ROOT, "%s: %.2f > baseline %s + %.0f%%", key, actual, v, tol * 100));
+  }
+
+  static Properties readBaseline(Path file) throws IOException {
+    Properties p = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      p.load(in);
+    }
+    return p;
+  }
+
+  /** Written by hand rather than Properties.store so the file stays sorted and diffable. */
+  static void writeBaseline(Path file, List<Result> results) throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add("# LoadTest baseline; regenerate with --write-baseline on the reference machine");
+    lines.add("tolerance=0.25");
+    for (Result r : results) {
+      String k = "c" + r.concurrency() + ".";
+      lines.add(String.format(Locale.ROOT, "%sdocsPerSec=%.2f", k, r.docsPerSec()));
+      lines.add(String.format(Locale.ROOT, "%sp50Ms=%.1f", k, r.p50Millis()));
+      if (r.peakRssMb() >= 0)
+        lines.add(k + "peakRssMb=" + r.peakRssMb());
+    }
+    Files.write(file, lines);
+  }
+
+  /* ------------------------------- Peak RSS ------------------------------- */
+
+  /** VmHWM from /proc (Linux only), or -1 where unavailable. */
+  static long peakRssMb() {
+    try (Stream<String> lines = Files.lines(Path.of("/proc/self/status"))) {
+      return lines.filter(l -> l.startsWith("VmHWM:"))
+          .map(l -> Long.parseLong(l.replaceAll("[^0-9]", "")) / 1024)
+          .findFirst().orElse(-1L);
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+
+  /** Reset the peak-RSS watermark so each level reports its own (Linux 4.0+; ignored elsewhere). */
+  private static void resetPeakRss() {
+    System.gc();
+    try {
+      Files.writeString(Path.of("/proc/self/clear_refs"), "5");
+    } catch (Exception ignore) {
+    }
+  }
+
+  private static void deleteTree(Path dir) throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+}
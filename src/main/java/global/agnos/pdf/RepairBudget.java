@@ -0,0 +1,262 @@
+package global.agnos.pdf;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+
+/**
+ * Per-document time budget: an overall deadline plus optional per-phase limits.
+ *
+ * A single shared watchdog thread arms an alarm for the current phase. When it
+ * fires, the budget is flagged as expired and the worker thread is interrupted
+ * (which unblocks HTTP and file channel calls). Code that spins without
+ * blocking — the PDFBox parser, the XFA DOM parse — notices at the next
+ * {@link #checkpoint()}, which the guarded streams below call on every read.
+ * Cancellation is cooperative: one library call that neither blocks nor reads
+ * through a guarded stream runs to completion first, which is why the XFA DOM
+ * walk checks in every {@link ConvertAndRepair#CHECKPOINT_EVERY} nodes.
+ *
+ * Limits come from the environment:
+ * XFA2ACRO_TIMEOUT=120s (whole document)
+ * XFA2ACRO_PHASE_TIMEOUTS=load=30s,strip-xfa=10s
+ * Durations accept an ms/s/m suffix; a bare number means seconds.
+ */
+public final class RepairBudget implements AutoCloseable {
+
+  public enum Phase {
+    CONVERT, LOAD, STRIP_JS, STRIP_XFA, REPAIR, SAVE;
+
+    public String label() {
+      return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    static Phase fromLabel(String label) {
+      return valueOf(label.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+  }
+
+  /** Configured limits; {@code document == null} means no overall deadline. */
+  public record Limits(Duration document, Map<Phase, Duration> phases) {
+
+    public Limits {
+      phases = phases.isEmpty() ? Map.of() : new EnumMap<>(phases);
+    }
+
+    public static Limits none() {
+      return new Limits(null, Map.of());
+    }
+
+    public static Limits fromEnv() {
+      return parse(System.getenv("XFA2ACRO_TIMEOUT"), System.getenv("XFA2ACRO_PHASE_TIMEOUTS"));
+    }
+
+    static Limits parse(String document, String phases) {
+      Duration doc = (document == null || document.isBlank()) ? null : parseDuration(document);
+      Map<Phase, Duration> byPhase = new EnumMap<>(Phase.class);
+      if (phases != null && !phases.isBlank()) {
+        for (String entry : phases.split(",")) {
+          int eq = entry.indexOf('=');
+          if (eq < 0)
+            throw new IllegalArgumentException("Expected <phase>=<duration>: " + entry);
+          byPhase.put(Phase.fromLabel(entry.substring(0, eq)), parseDuration(entry.substring(eq + 1)));
+        }
+      }
+      return new Limits(doc, byPhase);
+    }
+
+    public RepairBudget start() {
+      return new RepairBudget(this, Thread.currentThread());
+    }
+  }
+
+  private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "xfa2acro-watchdog");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private final Limits limits;
+  private final Thread owner;
+  private final long startNanos = System.nanoTime();
+
+  private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+
+  private Phase phase;
+  private long phaseStartNanos;
+  private ScheduledFuture<?> alarm;
+  private boolean interruptedOwner;
+  private boolean closed;
+  private volatile Phase expiredIn;
+
+  private RepairBudget(Limits limits, Thread owner) {
+    this.limits = limits;
+    this.owner = owner;
+  }
+
+  /** Budget with no deadlines; checkpoints never fire. */
+  public static RepairBudget unbounded() {
+    return Limits.none().start();
+  }
+
+  /** Switch to {@code next}, re-arming the watchdog for its limit (capped by the document deadline). */
+  public synchronized void enterPhase(Phase next) {
+    checkpoint();
+    if (alarm != null)
+      alarm.cancel(false);
+    alarm = null;
+    recordPhaseTime();
+    phase = next;
+    phaseStartNanos = System.nanoTime();
+
+    long delay = Long.MAX_VALUE;
+    Duration phaseLimit = limits.phases().get(next);
+    if (phaseLimit != null)
+      delay = phaseLimit.toNanos();
+    if (limits.document() != null)
+      delay = Math.min(delay, limits.document().toNanos() - (System.nanoTime() - startNanos));
+    if (delay == Long.MAX_VALUE)
+      return;
+    if (delay <= 0) {
+      expire(next);
+      checkpoint();
+    }
+    alarm = WATCHDOG.schedule(() -> expire(next), delay, TimeUnit.NANOSECONDS);
+  }
+
+  /** Throw {@link RepairTimeoutException} if the watchdog has fired. Cheap enough for per-read use. */
+  public void checkpoint() {
+    Phase p = expiredIn;
+    if (p != null)
+      throw new RepairTimeoutException(p, elapsedMillis());
+  }
+
+  public boolean isExpired() {
+    return expiredIn != null;
+  }
+
+  public Phase phase() {
+    return phase;
+  }
+
+  /** Wall time spent in each phase entered so far, in milliseconds. */
+  public synchronized Map<Phase, Long> phaseMillis() {
+    Map<Phase, Long> out = new EnumMap<>(Phase.class);
+    phaseNanos.forEach((p, n) -> out.put(p, TimeUnit.NANOSECONDS.toMillis(n)));
+    if (phase != null && !closed)
+      out.merge(phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - phaseStartNanos), Long::sum);
+    return out;
+  }
+
+  private void recordPhaseTime() {
+    if (phase != null)
+      phaseNanos.merge(phase, System.nanoTime() - phaseStartNanos, Long::sum);
+  }
+
+  public long elapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  private synchronized void expire(Phase p) {
+    if (closed || phase != p || expiredIn != null)
+      return;
+    expiredIn = p;
+    if (owner != Thread.currentThread()) {
+      interruptedOwner = true;
+      owner.interrupt();
+    }
+  }
+
+  /** Disarm the watchdog and clear any interrupt it left on the owner thread. */
+  @Override
+  public synchronized void close() {
+    if (closed)
+      return;
+    recordPhaseTime();
+    closed = true;
+    if (alarm != null)
+      alarm.cancel(false);
+    if (interruptedOwner && Thread.currentThread() == owner)
+      Thread.interrupted();
+  }
+
+  /* ------------------------------- Guarded I/O ------------------------------- */
+
+  InputStream guard(InputStream in) {
+    return new FilterInputStream(in) {
+      @Override
+      public int read() throws IOException {
+        checkpoint();
+        return super.read();
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        checkpoint();
+        return super.read(b, off, len);
+      }
+    };
+  }
+
+  OutputStream guard(OutputStream out) {
+    return new FilterOutputStream(out) {
+      @Override
+      public void write(int b) throws IOException {
+        checkpoint();
+        super.write(b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        checkpoint();
+        out.write(b, off, len);
+      }
+    };
+  }
+
+  /** PDF source whose reads and seeks check the budget, so a spinning parser is cancelled. */
+  RandomAccessReadBufferedFile openGuarded(Path pdf) throws IOException {
+    return new RandomAccessReadBufferedFile(pdf) {
+      @Override
+      public int read() throws IOException {
+        checkpoint();
+        return super.read();
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        checkpoint();
+        return super.read(b, off, len);
+      }
+
+      @Override
+      public void seek(long position) throws IOException {
+        checkpoint();
+        super.seek(position);
+      }
+    };
+  }
+
+  static Duration parseDuration(String s) {
+    String v = s.trim().toLowerCase(Locale.ROOT);
+    if (v.endsWith("ms"))
+      return Duration.ofMillis(Long.parseLong(v.substring(0, v.length() - 2).trim()));
+    if (v.endsWith("s"))
+      return Duration.ofSeconds(Long.parseLong(v.substring(0, v.length() - 1).trim()));
+    if (v.endsWith("m"))
+      return Duration.ofMinutes(Long.parseLong(v.substring(0, v.length() - 1).trim()));
+    return Duration.ofSeconds(Long.parseLong(v));
+  }
+}
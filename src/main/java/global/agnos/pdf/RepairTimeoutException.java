@@ -0,0 +1,27 @@
+package global.agnos.pdf;
+
+/**
+ * Thrown when a document runs over its {@link RepairBudget}. Carries the phase
+ * that was running when the watchdog fired so callers can report it.
+ */
+public class RepairTimeoutException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final RepairBudget.Phase phase;
+  private final long elapsedMillis;
+
+  RepairTimeoutException(RepairBudget.Phase phase, long elapsedMillis) {
+    super("Timed out during " + phase.label() + " after " + elapsedMillis + " ms");
+    this.phase = phase;
+    this.elapsedMillis = elapsedMillis;
+  }
+
+  public RepairBudget.Phase phase() {
+    return phase;
+  }
+
+  public long elapsedMillis() {
+    return elapsedMillis;
+  }
+}
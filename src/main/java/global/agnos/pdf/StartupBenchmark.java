@@ -0,0 +1,107 @@
+package global.agnos.pdf;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Startup benchmark: time-to-first-output of a one-shot CLI repair, with and
+ * without the AppCDS archive.
+ *
+ * Each sample launches a fresh JVM on the same synthetic form and stops the
+ * clock at the "Cleaned & repaired" line, which ConvertAndRepair prints only
+ * after the output PDF has been written. Runs alternate between the two modes after
+ * a warm-up so page-cache and CPU-frequency drift hit both equally, and the
+ * Aspose credentials are removed from the child environment so no run touches
+ * the network.
+ *
+ * Usage:
+ * java -cp xfa2acro-repair.jar global.agnos.pdf.StartupBenchmark <app.jar> <app.jsa> [runs]
+ */
+public final class StartupBenchmark {
+
+  private static final int WARMUP = 3;
+
+  private StartupBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2 || args.length > 3) {
+      System.err.println("Usage: StartupBenchmark <app.jar> <app.jsa> [runs]");
+      System.exit(2);
+    }
+    Path jar = Path.of(args[0]).toAbsolutePath();
+    Path jsa = Path.of(args[1]).toAbsolutePath();
+    int runs = (args.length == 3) ? Integer.parseInt(args[2]) : 20;
+    if (!Files.isReadable(jsa)) {
+      System.err.println("CDS archive not found: " + jsa);
+      System.exit(3);
+    }
+
+    Path dir = Files.createTempDirectory("xfa2acro-startup");
+    Path in = SyntheticForms.write(dir.resolve("form.pdf"), SyntheticForms.Spec.small());
+    Path out = dir.resolve("form_clean.pdf");
+    String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+    List<String> plain = List.of(java, "-Xshare:auto", "-jar", jar.toString(), in.toString(), out.toString());
+    List<String> cds = List.of(java, "-Xshare:auto", "-XX:SharedArchiveFile=" + jsa, "-Xlog:cds=off",
+        "-Xlog:cds+dynamic=off", "-jar", jar.toString(), in.toString(), out.toString());
+
+    for (int i = 0; i < WARMUP; i++) {
+      timeToFirstOutput(plain);
+      timeToFirstOutput(cds);
+    }
+    List<Double> plainMs = new ArrayList<>();
+    List<Double> cdsMs = new ArrayList<>();
+    for (int i = 0; i < runs; i++) {
+      plainMs.add(timeToFirstOutput(plain));
+      cdsMs.add(timeToFirstOutput(cds));
+    }
+
+    System.out.println("java: " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version")
+        + ", runs: " + runs);
+    report("default CDS only", plainMs);
+    report("AppCDS archive  ", cdsMs);
+    System.out.printf(Locale.ROOT, "median speedup: %.2fx%n", percentile(plainMs, 50) / percentile(cdsMs, 50));
+
+    Files.deleteIfExists(out);
+    Files.deleteIfExists(in);
+    Files.deleteIfExists(dir);
+  }
+
+  private static double timeToFirstOutput(List<String> cmd) throws Exception {
+    ProcessBuilder pb = new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.DISCARD);
+    pb.environment().remove("ASPOSE_CLIENT_ID");
+    pb.environment().remove("ASPOSE_CLIENT_SECRET");
+    long t0 = System.nanoTime();
+    Process p = pb.start();
+    try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+      double ms = -1;
+      for (String line; (line = r.readLine()) != null;) {
+        if (ms < 0 && line.startsWith("Cleaned & repaired"))
+          ms = (System.nanoTime() - t0) / 1e6;
+      }
+      if (p.waitFor() != 0 || ms < 0)
+        throw new IllegalStateException("Run failed: " + String.join(" ", cmd));
+      return ms;
+    }
+  }
+
+  private static void report(String label, List<Double> ms) {
+    System.out.printf(Locale.ROOT, "%s  min %7.1f ms  p50 %7.1f ms  p90 %7.1f ms%n",
+        label, Collections.min(ms), percentile(ms, 50), percentile(ms, 90));
+  }
+
+  private static double percentile(List<Double> values, double pct) {
+    List<Double> sorted = new ArrayList<>(values);
+    Collections.sort(sorted);
+    int idx = (int) Math.ceil(pct / 100.0 * sorted.size()) - 1;
+    return sorted.get(Math.max(0, Math.min(idx, sorted.size() - 1)));
+  }
+}
@@ -0,0 +1,78 @@
+package global.agnos.pdf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the two Aspose Cloud endpoints the tool calls, for load
+ * tests that should include the conversion round trip without the network.
+ * The token endpoint returns a fixed token; the convert endpoint echoes the
+ * uploaded PDF back after {@code latencyMillis}.
+ */
+final class StubConversionServer implements AutoCloseable {
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+    Thread t = new Thread(r, "xfa2acro-stub");
+    t.setDaemon(true);
+    return t;
+  });
+
+  StubConversionServer(long latencyMillis) throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.setExecutor(executor);
+    server.createContext("/connect/token", ex -> {
+      drain(ex);
+      respond(ex, "application/json",
+          "{\"access_token\":\"stub-token\",\"token_type\":\"bearer\",\"expires_in\":3600}"
+              .getBytes(StandardCharsets.UTF_8));
+    });
+    server.createContext("/v3.0/pdf/convert/xfatoacroform", ex -> {
+      byte[] pdf;
+      try (InputStream in = ex.getRequestBody()) {
+        pdf = in.readAllBytes();
+      }
+      try {
+        Thread.sleep(latencyMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      respond(ex, "application/pdf", pdf);
+    });
+    server.start();
+  }
+
+  /** Value for ASPOSE_BASE_URL. */
+  String baseUrl() {
+    return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private static void drain(HttpExchange ex) throws IOException {
+    try (InputStream in = ex.getRequestBody()) {
+      in.readAllBytes();
+    }
+  }
+
+  private static void respond(HttpExchange ex, String contentType, byte[] body) throws IOException {
+    ex.getResponseHeaders().set("Content-Type", contentType);
+    ex.sendResponseHeaders(200, body.length);
+    try (OutputStream out = ex.getResponseBody()) {
+      out.write(body);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package global.agnos.pdf;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.action.PDActionJavaScript;
+import org.apache.pdfbox.pdmodel.interactive.action.PDPageAdditionalActions;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+
+/**
+ * Generates synthetic XFA-style forms exercising every repair path: orphan
+ * widgets (Tx/Ch/Btn), XFA packets with events and JavaScript, and document,
+ * page and widget JavaScript actions. Used for the CDS training run and the
+ * load generator; never touches real customer forms.
+ */
+final class SyntheticForms {
+
+  /**
+   * Shape of one generated form. {@code xfaBytes} is the approximate size of
+   * the template packet (0 for no XFA).
+   */
+  record Spec(int pages, int orphanWidgetsPerPage, int xfaBytes, boolean javaScript) {
+
+    static Spec small() {
+      return new Spec(1, 3, 4 << 10, true);
+    }
+  }
+
+  private static final COSName[] FIELD_TYPES = { COSName.TX, COSName.CH, COSName.BTN };
+
+  private SyntheticForms() {
+  }
+
+  static Path write(Path file, Spec spec) throws Exception {
+    try (PDDocument doc = new PDDocument()) {
+      PDAcroForm acro = new PDAcroForm(doc);
+      doc.getDocumentCatalog().setAcroForm(acro); // empty field tree: every widget is an orphan
+
+      int n = 0;
+      for (int p = 0; p < spec.pages(); p++) {
+        PDPage page = new PDPage(PDRectangle.LETTER);
+        doc.addPage(page);
+        if (spec.javaScript()) {
+          PDPageAdditionalActions aa = new PDPageAdditionalActions();
+          aa.setO(new PDActionJavaScript("app.alert('page " + p + "');"));
+          page.setActions(aa);
+        }
+        for (int w = 0; w < spec.orphanWidgetsPerPage(); w++, n++) {
+          PDAnnotationWidget widget = new PDAnnotationWidget();
+          widget.setRectangle(new PDRectangle(72, 700 - 24 * (w % 28), 200, 18));
+          widget.getCOSObject().setItem(COSName.FT, FIELD_TYPES[n % FIELD_TYPES.length]);
+          widget.getCOSObject().setItem(COSName.T, new COSString("form1[0].page" + p + "[0].field" + w));
+          if (spec.javaScript())
+            widget.setAction(new PDActionJavaScript("this.getField('field" + w + "').value = 1;"));
+          page.getAnnotations().add(widget);
+        }
+      }
+
+      if (spec.javaScript())
+        doc.getDocumentCatalog().setOpenAction(new PDActionJavaScript("app.alert('open');"));
+
+      if (spec.xfaBytes() > 0) {
+        COSArray xfa = new COSArray();
+        xfa.add(new COSString("template"));
+        xfa.add(xfaPacket(doc, spec.xfaBytes()));
+        acro.getCOSObject().setItem(COSName.getPDFName("XFA"), xfa);
+      }
+
+      doc.save(file.toFile());
+    }
+    return file;
+  }
+
+  private static COSStream xfaPacket(PDDocument doc, int approxBytes) throws Exception {
+    byte[] open = "<template xmlns=\"http://www.xfa.org/schema/xfa-template/3.3/\"><subform name=\"form1\">"
+        .getBytes(StandardCharsets.UTF_8);
+    byte[] close = "</subform></template>".getBytes(StandardCharsets.UTF_8);
+    COSStream s = doc.getDocument().createCOSStream();
+    try (OutputStream out = s.createOutputStream(COSName.FLATE_DECODE)) {
+      out.write(open);
+      int written = open.length + close.length;
+      for (int i = 0; written < approxBytes; i++) {
+        byte[] field = ("<field name=\"field" + i + "\"><event activity=\"change\"><script contentType=\"application/x-javascript\">"
+            + "xfa.host.messageBox('" + i + "');</script></event>"
+            + "<script contentType=\"application/x-formcalc\">$ = " + i + "</script></field>")
+            .getBytes(StandardCharsets.UTF_8);
+        out.write(field);
+        written += field.length;
+      }
+      out.write(close);
+    }
+    return s;
+  }
+}
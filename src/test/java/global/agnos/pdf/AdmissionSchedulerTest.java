@@ -0,0 +1,225 @@
+package global.agnos.pdf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AdmissionSchedulerTest {
+
+  @TempDir
+  Path tmp;
+
+  /** Form with {@code pages} blank pages and an unfiltered XFA packet of {@code xfaBytes}. */
+  private Path makeForm(String name, int pages, int xfaBytes) throws Exception {
+    Path p = tmp.resolve(name);
+    try (PDDocument doc = new PDDocument()) {
+      for (int i = 0; i < pages; i++)
+        doc.addPage(new PDPage(PDRectangle.LETTER));
+      PDAcroForm acro = new PDAcroForm(doc);
+      doc.getDocumentCatalog().setAcroForm(acro);
+      if (xfaBytes > 0) {
+        COSStream xfa = doc.getDocument().createCOSStream();
+        try (OutputStream out = xfa.createRawOutputStream()) {
+          out.write(("<xdp>" + "x".repeat(xfaBytes) + "</xdp>").getBytes(StandardCharsets.UTF_8));
+        }
+        acro.getCOSObject().setItem(COSName.getPDFName("XFA"), xfa);
+      }
+      doc.save(p.toFile());
+    }
+    return p;
+  }
+
+  @Test
+  void estimate_grows_with_pages_and_xfa() throws Exception {
+    long plain = JobCostEstimator.estimateBytes(makeForm("plain.pdf", 1, 0));
+    long paged = JobCostEstimator.estimateBytes(makeForm("paged.pdf", 200, 0));
+    long xfa = JobCostEstimator.estimateBytes(makeForm("xfa.pdf", 1, 1 << 20));
+
+    assertTrue(plain >= JobCostEstimator.BASE_BYTES);
+    assertTrue(paged >= plain + 199 * JobCostEstimator.PAGE_BYTES, "Pages should add cost");
+    assertTrue(xfa >= plain + (1L << 20) * JobCostEstimator.XFA_DOM_FACTOR, "XFA packet should add cost");
+  }
+
+  @Test
+  void slow_probe_falls_back_to_size_only_estimate() throws Exception {
+    Path form = makeForm("probe.pdf", 200, 0);
+    long size = Files.size(form);
+
+    long t0 = System.nanoTime();
+    long cost = JobCostEstimator.estimateBytes(form, Duration.ZERO);
+    assertTrue(Duration.ofNanos(System.nanoTime() - t0).toMillis() < 5_000, "Probe should give up promptly");
+    assertEquals(JobCostEstimator.estimate(size, 0, size * JobCostEstimator.XFA_INFLATE_FACTOR), cost);
+    assertFalse(Thread.currentThread().isInterrupted(), "Probe watchdog must not leak an interrupt");
+  }
+
+  @Test
+  void probe_of_broken_file_releases_its_handle() throws Exception {
+    Path fds = Path.of("/proc/self/fd");
+    assumeTrue(Files.isDirectory(fds), "Needs /proc to count open files");
+    Path broken = tmp.resolve("broken.pdf");
+    Files.writeString(broken, "not a pdf");
+
+    for (int i = 0; i < 50; i++)
+      JobCostEstimator.estimateBytes(broken);
+    JobCostEstimator.estimateBytes(makeForm("ok.pdf", 1, 0), Duration.ZERO);
+
+    long open;
+    try (Stream<Path> links = Files.list(fds)) {
+      open = links.filter(l -> {
+        try {
+          Path target = Files.readSymbolicLink(l);
+          return target.equals(broken) || target.getFileName().toString().equals("ok.pdf");
+        } catch (Exception e) {
+          return false; // closed while listing
+        }
+      }).count();
+    }
+    assertEquals(0, open, "Failed and timed-out probes must close the file");
+  }
+
+  /**
+   * Synthetic mixed workload: one job taking 80% of the budget runs while 200
+   * small jobs are submitted behind it. With more workers than the budget
+   * allows, the budget is what limits the small jobs: exactly
+   * (budget - large) / small of them run at once, all finish before the large
+   * one is released, and the reservation never exceeds the budget.
+   */
+  @Test
+  void small_jobs_flow_while_large_job_runs() throws Exception {
+    long budget = 1000, largeCost = 800, smallCost = 100;
+    CountDownLatch releaseLarge = new CountDownLatch(1);
+    CountDownLatch largeStarted = new CountDownLatch(1);
+    AtomicInteger runningSmall = new AtomicInteger();
+    AtomicInteger maxRunningSmall = new AtomicInteger();
+
+    List<CompletableFuture<Integer>> small = new ArrayList<>();
+    CompletableFuture<Integer> large;
+    try (AdmissionScheduler s = new AdmissionScheduler(8, budget)) {
+      large = s.submit(largeCost, () -> {
+        largeStarted.countDown();
+        releaseLarge.await();
+        return -1;
+      });
+      assertTrue(largeStarted.await(5, TimeUnit.SECONDS));
+
+      for (int i = 0; i < 200; i++) {
+        int id = i;
+        small.add(s.submit(smallCost, () -> {
+          maxRunningSmall.accumulateAndGet(runningSmall.incrementAndGet(), Math::max);
+          Thread.sleep(5);
+          runningSmall.decrementAndGet();
+          return id;
+        }));
+      }
+      CompletableFuture.allOf(small.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+      assertFalse(large.isDone(), "Small jobs should complete while the large one is still running");
+      releaseLarge.countDown();
+      assertTrue(s.peakReservedBytes() <= budget);
+    }
+    assertEquals(-1, large.join());
+    assertEquals((budget - largeCost) / smallCost, maxRunningSmall.get(),
+        "Budget, not the worker count, should bound the small jobs");
+  }
+
+  /** The same shape end to end: real forms, costs from JobCostEstimator, repairs through BatchRunner. */
+  @Test
+  void batch_of_real_forms_stays_within_estimated_budget() throws Exception {
+    Path in = tmp.resolve("in");
+    Path out = tmp.resolve("out");
+    Files.createDirectories(in);
+    Path large = SyntheticForms.write(in.resolve("large.pdf"), new SyntheticForms.Spec(200, 4, 1 << 20, true));
+    for (int i = 0; i < 12; i++)
+      SyntheticForms.write(in.resolve("small-" + i + ".pdf"), SyntheticForms.Spec.small());
+
+    long largeCost = JobCostEstimator.estimateBytes(large);
+    long smallCost = JobCostEstimator.estimateBytes(in.resolve("small-0.pdf"));
+    assertTrue(largeCost > 2 * smallCost, "Large form should be estimated well above a small one");
+    long budget = largeCost + 2 * smallCost;
+
+    BatchRunner.Summary summary;
+    try (AdmissionScheduler s = new AdmissionScheduler(8, budget)) {
+      summary = BatchRunner.run(in, out, null, RepairBudget.Limits.none(), s);
+      assertTrue(s.peakReservedBytes() <= budget, "Reserved " + s.peakReservedBytes() + " of " + budget);
+      assertTrue(s.peakReservedBytes() >= largeCost, "Large form should have been charged its estimate");
+    }
+    assertEquals(13, summary.succeeded());
+    assertEquals(0, summary.failed());
+  }
+
+  @Test
+  void large_job_is_not_starved_by_a_stream_of_small_ones() throws Exception {
+    AtomicInteger smallAfterLarge = new AtomicInteger();
+    AtomicInteger largeRan = new AtomicInteger();
+    try (AdmissionScheduler s = new AdmissionScheduler(2, 100)) {
+      // Keep one small job always running so the large job never fits on its own
+      s.submit(10, () -> {
+        Thread.sleep(50);
+        return 0;
+      });
+      CompletableFuture<Integer> large = s.submit(95, () -> largeRan.incrementAndGet());
+      List<CompletableFuture<Integer>> rest = new ArrayList<>();
+      for (int i = 0; i < AdmissionScheduler.MAX_BYPASSES * 3; i++) {
+        rest.add(s.submit(10, () -> {
+          if (largeRan.get() == 0)
+            smallAfterLarge.incrementAndGet();
+          return 0;
+        }));
+      }
+      large.get(30, TimeUnit.SECONDS);
+      CompletableFuture.allOf(rest.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+    }
+    assertEquals(1, largeRan.get());
+    assertTrue(smallAfterLarge.get() <= AdmissionScheduler.MAX_BYPASSES,
+        "Large job was bypassed " + smallAfterLarge.get() + " times");
+  }
+
+  @Test
+  void oversized_job_runs_alone() throws Exception {
+    AtomicInteger concurrent = new AtomicInteger();
+    AtomicInteger maxSeen = new AtomicInteger();
+    try (AdmissionScheduler s = new AdmissionScheduler(4, 100)) {
+      for (int i = 0; i < 5; i++) {
+        long cost = (i == 2) ? 500 : 20;
+        s.submit(cost, () -> {
+          int c = concurrent.incrementAndGet();
+          if (cost == 500)
+            maxSeen.set(c);
+          Thread.sleep(20);
+          concurrent.decrementAndGet();
+          return 0;
+        });
+      }
+    }
+    assertEquals(1, maxSeen.get(), "Job over the whole budget must not share the heap");
+  }
+
+  @Test
+  void parses_byte_sizes() {
+    assertEquals(512L << 20, AdmissionScheduler.parseBytes("512m"));
+    assertEquals(6L << 30, AdmissionScheduler.parseBytes("6G"));
+    assertEquals(1234, AdmissionScheduler.parseBytes("1234"));
+  }
+}
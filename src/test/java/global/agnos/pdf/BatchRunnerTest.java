@@ -0,0 +1,138 @@
+package global.agnos.pdf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchRunnerTest {
+
+  @TempDir
+  Path tmp;
+
+  /** 1-page form with one orphan text widget named {@code field}. */
+  private Path makeForm(Path dir, String name, String field) throws Exception {
+    Files.createDirectories(dir);
+    Path p = dir.resolve(name);
+    try (PDDocument doc = new PDDocument()) {
+      PDPage page = new PDPage(PDRectangle.LETTER);
+      doc.addPage(page);
+      doc.getDocumentCatalog().setAcroForm(new PDAcroForm(doc));
+
+      PDAnnotationWidget w = new PDAnnotationWidget();
+      w.setRectangle(new PDRectangle(100, 600, 150, 18));
+      w.getCOSObject().setItem(COSName.FT, COSName.TX);
+      w.getCOSObject().setItem(COSName.T, new COSString(field));
+      page.getAnnotations().add(w);
+
+      doc.save(p.toFile());
+    }
+    return p;
+  }
+
+  private static List<BatchJournal.Entry> entries(Path journal) throws Exception {
+    return Files.readAllLines(journal).stream().map(BatchJournal.Entry::parse).filter(e -> e != null).toList();
+  }
+
+  @Test
+  void records_each_input_and_skips_completed_on_restart() throws Exception {
+    Path in = tmp.resolve("in");
+    Path out = tmp.resolve("out");
+    Path a = makeForm(in, "a.pdf", "A");
+    makeForm(in.resolve("sub"), "b.pdf", "B");
+
+    BatchRunner.Summary first = BatchRunner.run(in, out, null, RepairBudget.Limits.none());
+    assertEquals(2, first.succeeded());
+    assertTrue(Files.exists(out.resolve("sub").resolve("b.pdf")));
+
+    Path journal = out.resolve(BatchRunner.DEFAULT_JOURNAL);
+    List<BatchJournal.Entry> recorded = entries(journal);
+    assertEquals(2, recorded.size());
+    for (BatchJournal.Entry e : recorded) {
+      assertEquals(BatchJournal.OK, e.outcome());
+      assertEquals(64, e.sha256().length());
+      assertTrue(e.phaseMillis().containsKey(RepairBudget.Phase.LOAD), "Phase timings should be journaled");
+    }
+
+    // Corrupt a.pdf without changing size or mtime: a resumed run must not open it
+    FileTime mtime = Files.getLastModifiedTime(a);
+    byte[] junk = new byte[(int) Files.size(a)];
+    Arrays.fill(junk, (byte) 'x');
+    Files.write(a, junk);
+    Files.setLastModifiedTime(a, mtime);
+
+    BatchRunner.Summary second = BatchRunner.run(in, out, null, RepairBudget.Limits.none());
+    assertEquals(2, second.skipped());
+    assertEquals(0, second.failed());
+    assertEquals(2, entries(journal).size(), "Skipped inputs are not re-journaled");
+  }
+
+  @Test
+  void failed_inputs_are_journaled_and_retried() throws Exception {
+    Path in = tmp.resolve("in");
+    Path out = tmp.resolve("out");
+    Files.createDirectories(in);
+    Files.writeString(in.resolve("broken.pdf"), "not a pdf");
+
+    BatchRunner.Summary first = BatchRunner.run(in, out, null, RepairBudget.Limits.none());
+    assertEquals(1, first.failed());
+    assertEquals(BatchJournal.ERROR, entries(out.resolve(BatchRunner.DEFAULT_JOURNAL)).get(0).outcome());
+
+    BatchRunner.Summary second = BatchRunner.run(in, out, null, RepairBudget.Limits.none());
+    assertEquals(0, second.skipped());
+    assertEquals(1, second.failed());
+  }
+
+  @Test
+  void duplicate_content_is_hashed_alike_but_repaired_separately() throws Exception {
+    Path in = tmp.resolve("in");
+    Path out = tmp.resolve("out");
+    Path a = makeForm(in, "a.pdf", "Same");
+    Files.copy(a, in.resolve("copy-of-a.pdf"));
+
+    BatchRunner.Summary summary = BatchRunner.run(in, out, null, RepairBudget.Limits.none());
+    assertEquals(2, summary.succeeded());
+
+    List<BatchJournal.Entry> recorded = entries(out.resolve(BatchRunner.DEFAULT_JOURNAL));
+    assertEquals(recorded.get(0).sha256(), recorded.get(1).sha256());
+    for (BatchJournal.Entry e : recorded)
+      assertTrue(e.phaseMillis().containsKey(RepairBudget.Phase.LOAD), "Each input should be repaired, not copied");
+  }
+
+  @Test
+  void torn_last_line_is_ignored_and_terminated() throws Exception {
+    Path journal = tmp.resolve("j.tsv");
+    Files.writeString(journal, BatchJournal.HEADER + "\n"
+        + "abc\tok\t5\t10\t20\t/in/a.pdf\t/out/a.pdf\tload=1\n"
+        + "def\tok\t5\t1", StandardCharsets.UTF_8);
+
+    try (BatchJournal j = BatchJournal.open(journal)) {
+      assertEquals(1, j.loadedEntries());
+      assertTrue(j.isCompleted("/in/a.pdf", 10, 20));
+      assertFalse(j.isCompleted("/in/a.pdf", 11, 20));
+      j.append(new BatchJournal.Entry("ghi", BatchJournal.OK, 1, 2, 3, "/in/b\tx.pdf", "/out/b.pdf", Map.of()));
+    }
+
+    try (BatchJournal j = BatchJournal.open(journal)) {
+      assertEquals(2, j.loadedEntries());
+      assertTrue(j.isCompleted("/in/b\tx.pdf", 2, 3));
+    }
+  }
+}
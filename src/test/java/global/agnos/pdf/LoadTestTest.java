@@ -0,0 +1,92 @@
+package global.agnos.pdf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LoadTestTest {
+
+  @TempDir
+  Path tmp;
+
+  @Test
+  void corpus_is_reproducible_for_a_seed() throws Exception {
+    LoadTest.Options opt = LoadTest.Options.parse(new String[] { "--docs", "8", "--large-xfa-kb", "16", "--pages", "5" });
+    List<Path> a = LoadTest.generateCorpus(tmp.resolve("a"), opt);
+    List<Path> b = LoadTest.generateCorpus(tmp.resolve("b"), opt);
+
+    assertEquals(8, a.size());
+    for (int i = 0; i < a.size(); i++) {
+      try (PDDocument da = Loader.loadPDF(a.get(i).toFile()); PDDocument db = Loader.loadPDF(b.get(i).toFile())) {
+        assertEquals(da.getNumberOfPages(), db.getNumberOfPages(), "Same seed should give the same mix");
+      }
+    }
+  }
+
+  @Test
+  void flags_regressions_beyond_tolerance() {
+    Properties baseline = new Properties();
+    baseline.setProperty("tolerance", "0.10");
+    baseline.setProperty("c4.docsPerSec", "100");
+    baseline.setProperty("c4.p50Ms", "20");
+    baseline.setProperty("c4.p99Ms", "200");
+    baseline.setProperty("c4.peakRssMb", "500");
+
+    LoadTest.Result ok = new LoadTest.Result(4, 50, 0, 95, 10, 210, 520);
+    assertEquals(List.of(), LoadTest.regressions(List.of(ok), baseline));
+
+    LoadTest.Result slow = new LoadTest.Result(4, 50, 1, 80, 30, 900, 600);
+    List<String> found = LoadTest.regressions(List.of(slow), baseline);
+    assertEquals(4, found.size(), found.toString());
+    assertTrue(found.get(0).contains("failed"));
+    assertTrue(found.stream().noneMatch(f -> f.contains("p99")), "p99 is reported, not gated");
+  }
+
+  @Test
+  void base_url_override_is_limited_to_loopback() {
+    try {
+      System.setProperty("ASPOSE_BASE_URL", "http://127.0.0.1:8080");
+      assertEquals("http://127.0.0.1:8080", ConvertAndRepair.asposeBaseUrl());
+      System.setProperty("ASPOSE_BASE_URL", "http://[::1]:8080");
+      assertEquals("http://[::1]:8080", ConvertAndRepair.asposeBaseUrl());
+      for (String external : List.of("http://example.com", "https://10.0.0.5", "http://localhost.evil.test", "::bogus")) {
+        System.setProperty("ASPOSE_BASE_URL", external);
+        assertEquals("https://api.aspose.cloud", ConvertAndRepair.asposeBaseUrl(), external);
+      }
+    } finally {
+      System.clearProperty("ASPOSE_BASE_URL");
+    }
+  }
+
+  @Test
+  void repairs_through_stub_conversion_server() throws Exception {
+    Path in = SyntheticForms.write(tmp.resolve("form.pdf"), SyntheticForms.Spec.small());
+    Path out = tmp.resolve("form_clean.pdf");
+    try (StubConversionServer stub = new StubConversionServer(0)) {
+      System.setProperty("ASPOSE_BASE_URL", stub.baseUrl());
+      System.setProperty("ASPOSE_CLIENT_ID", "stub");
+      System.setProperty("ASPOSE_CLIENT_SECRET", "stub");
+      try (RepairBudget budget = RepairBudget.unbounded()) {
+        assertTrue(ConvertAndRepair.convertAndRepair(in, out, budget), "Stub should have done the conversion");
+      }
+    } finally {
+      System.clearProperty("ASPOSE_BASE_URL");
+      System.clearProperty("ASPOSE_CLIENT_ID");
+      System.clearProperty("ASPOSE_CLIENT_SECRET");
+    }
+    try (PDDocument doc = Loader.loadPDF(out.toFile())) {
+      assertEquals(1, doc.getNumberOfPages());
+      assertEquals(null, doc.getDocumentCatalog().getCOSObject().getDictionaryObject(COSName.OPEN_ACTION),
+          "Local cleanup should still run after the stub conversion");
+    }
+  }
+}
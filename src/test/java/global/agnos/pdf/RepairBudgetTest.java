@@ -0,0 +1,202 @@
+package global.agnos.pdf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+class RepairBudgetTest {
+
+  @TempDir
+  Path tmp;
+
+  /** An XFA packet that never ends: the parser would spin on it forever without the watchdog. */
+  private static InputStream endlessXfa() {
+    byte[] head = "<xdp><template>".getBytes(StandardCharsets.UTF_8);
+    byte[] body = "<subform><field><event activity=\"click\"/></field></subform>".getBytes(StandardCharsets.UTF_8);
+    return new InputStream() {
+      long pos;
+
+      @Override
+      public int read() {
+        long i = pos++;
+        return (i < head.length) ? head[(int) i] : body[(int) ((i - head.length) % body.length)];
+      }
+    };
+  }
+
+  /** 1-page doc with a single-stream XFA packet of {@code repeats} subforms. */
+  private Path makePdfWithLargeXfa(String name, int repeats) throws Exception {
+    Path p = tmp.resolve(name);
+    try (PDDocument doc = new PDDocument()) {
+      doc.addPage(new PDPage(PDRectangle.LETTER));
+      PDAcroForm acro = new PDAcroForm(doc);
+      doc.getDocumentCatalog().setAcroForm(acro);
+
+      COSStream xfa = doc.getDocument().createCOSStream();
+      try (OutputStream out = xfa.createOutputStream(COSName.FLATE_DECODE)) {
+        out.write("<xdp><template>".getBytes(StandardCharsets.UTF_8));
+        byte[] sub = "<subform><field><event activity=\"click\"><script contentType=\"application/x-javascript\">x()</script></event></field></subform>"
+            .getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < repeats; i++)
+          out.write(sub);
+        out.write("</template></xdp>".getBytes(StandardCharsets.UTF_8));
+      }
+      acro.getCOSObject().setItem(COSName.getPDFName("XFA"), xfa);
+      doc.save(p.toFile());
+    }
+    return p;
+  }
+
+  @Test
+  void parses_phase_and_document_limits() {
+    RepairBudget.Limits limits = RepairBudget.Limits.parse("2m", "load=30, strip-xfa=500ms");
+    assertEquals(Duration.ofMinutes(2), limits.document());
+    assertEquals(Map.of(
+        RepairBudget.Phase.LOAD, Duration.ofSeconds(30),
+        RepairBudget.Phase.STRIP_XFA, Duration.ofMillis(500)), limits.phases());
+
+    assertNull(RepairBudget.Limits.parse(null, null).document());
+    assertThrows(IllegalArgumentException.class, () -> RepairBudget.Limits.parse(null, "bogus=1s"));
+  }
+
+  @Test
+  void watchdog_cancels_endless_xfa_parse() {
+    RepairBudget.Limits limits = RepairBudget.Limits.parse(null, "strip-xfa=200ms");
+    long t0 = System.nanoTime();
+    try (RepairBudget budget = limits.start()) {
+      budget.enterPhase(RepairBudget.Phase.STRIP_XFA);
+      RepairTimeoutException e = assertThrows(RepairTimeoutException.class,
+          () -> ConvertAndRepair.removeXfaEventsAndJs(endlessXfa(), StandardCharsets.UTF_8, budget));
+      assertEquals(RepairBudget.Phase.STRIP_XFA, e.phase());
+    }
+    long tookMs = Duration.ofNanos(System.nanoTime() - t0).toMillis();
+    assertTrue(tookMs < 5_000, "Cancellation should be prompt, took " + tookMs + " ms");
+    assertFalse(Thread.currentThread().isInterrupted(), "Watchdog interrupt must not leak past close()");
+  }
+
+  @Test
+  void dom_walk_stops_once_the_watchdog_fires() throws Exception {
+    StringBuilder xml = new StringBuilder("<xdp><template>");
+    for (int i = 0; i < 20_000; i++)
+      xml.append("<subform><event activity=\"click\"/></subform>");
+    xml.append("</template></xdp>");
+    Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(new InputSource(new StringReader(xml.toString())));
+
+    try (RepairBudget budget = RepairBudget.Limits.parse(null, "strip-xfa=200ms").start()) {
+      budget.enterPhase(RepairBudget.Phase.STRIP_XFA);
+      assertEquals(20_000, ConvertAndRepair.elements(doc, "event", budget).size());
+      // Parse done, DOM in hand: the deadline passes with no stream left to notice it
+      while (!budget.isExpired())
+        Thread.onSpinWait();
+      assertThrows(RepairTimeoutException.class, () -> ConvertAndRepair.elements(doc, "event", budget));
+    }
+  }
+
+  @Test
+  void slow_document_fails_with_phase_and_leaves_no_output() throws Exception {
+    Path input = makePdfWithLargeXfa("slow.pdf", 200_000);
+    Path output = tmp.resolve("slow_clean.pdf");
+
+    RepairBudget.Limits limits = RepairBudget.Limits.parse(null, "strip-xfa=1ms");
+    try (RepairBudget budget = limits.start()) {
+      RepairTimeoutException e = assertThrows(RepairTimeoutException.class,
+          () -> ConvertAndRepair.repairPdfInToOut(input, output, budget));
+      assertEquals(RepairBudget.Phase.STRIP_XFA, e.phase());
+    }
+
+    assertFalse(Files.exists(output), "Timed-out document must not produce output");
+    try (Stream<Path> left = Files.list(tmp)) {
+      assertTrue(left.noneMatch(f -> f.toString().endsWith(".part")), "Temp output should be cleaned up");
+    }
+  }
+
+  @Test
+  void timeout_after_aspose_conversion_leaves_no_scripted_output() throws Exception {
+    Path input = SyntheticForms.write(tmp.resolve("js.pdf"), SyntheticForms.Spec.small());
+    Path output = tmp.resolve("js_out.pdf");
+
+    try (StubConversionServer stub = new StubConversionServer(0)) {
+      System.setProperty("ASPOSE_BASE_URL", stub.baseUrl());
+      System.setProperty("ASPOSE_CLIENT_ID", "stub");
+      System.setProperty("ASPOSE_CLIENT_SECRET", "stub");
+      RepairBudget.Limits limits = RepairBudget.Limits.parse(null, "load=0ms");
+      try (RepairBudget budget = limits.start()) {
+        RepairTimeoutException e = assertThrows(RepairTimeoutException.class,
+            () -> ConvertAndRepair.convertAndRepair(input, output, budget));
+        assertEquals(RepairBudget.Phase.LOAD, e.phase());
+      }
+    } finally {
+      System.clearProperty("ASPOSE_BASE_URL");
+      System.clearProperty("ASPOSE_CLIENT_ID");
+      System.clearProperty("ASPOSE_CLIENT_SECRET");
+    }
+
+    assertFalse(Files.exists(output), "Converted-but-unrepaired PDF must not be left at the output path");
+    try (Stream<Path> left = Files.list(tmp)) {
+      assertTrue(left.allMatch(f -> f.equals(input)), "Temp files should be cleaned up");
+    }
+  }
+
+  @Test
+  void no_aspose_temp_file_without_credentials() throws Exception {
+    Path input = SyntheticForms.write(tmp.resolve("plain.pdf"), SyntheticForms.Spec.small());
+    Path outDir = Files.createDirectories(tmp.resolve("out"));
+    List<String> created = new ArrayList<>();
+
+    try (WatchService watch = FileSystems.getDefault().newWatchService()) {
+      outDir.register(watch, StandardWatchEventKinds.ENTRY_CREATE);
+      System.setProperty("ASPOSE_CLIENT_ID", ""); // ignore ambient credentials
+      try (RepairBudget budget = RepairBudget.unbounded()) {
+        assertFalse(ConvertAndRepair.convertAndRepair(input, outDir.resolve("plain.pdf"), budget));
+      } finally {
+        System.clearProperty("ASPOSE_CLIENT_ID");
+      }
+      for (WatchKey key; (key = watch.poll(200, TimeUnit.MILLISECONDS)) != null; key.reset())
+        key.pollEvents().forEach(ev -> created.add(ev.context().toString()));
+    }
+    assertTrue(created.stream().noneMatch(n -> n.endsWith(".aspose")), "Created: " + created);
+  }
+
+  @Test
+  void unbounded_budget_still_repairs() throws Exception {
+    Path input = makePdfWithLargeXfa("small.pdf", 10);
+    Path output = tmp.resolve("small_clean.pdf");
+
+    ConvertAndRepair.repairPdfInToOut(input, output);
+
+    assertTrue(Files.size(output) > 0);
+  }
+}